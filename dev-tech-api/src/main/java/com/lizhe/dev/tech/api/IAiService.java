@@ -2,8 +2,11 @@ package com.lizhe.dev.tech.api;
 
 
 import org.springframework.ai.chat.ChatResponse;
+import org.springframework.http.codec.ServerSentEvent;
 import reactor.core.publisher.Flux;
 
+import java.util.List;
+
 /**
  * AI服务接口
  * <p>提供AI模型的对话生成功能，支持同步和异步流式响应</p>
@@ -40,10 +43,48 @@ public interface IAiService {
      * 生成AI基于Rag问答(流式异步方式)
      *
      * @param model   使用的AI模型
-     * @param ragTag  选择知识库
+     * @param ragTags 选择知识库，可选择多个，各知识库并行检索后合并
      * @param message 用户输入的消息内容
+     * @param efSearch            HNSW查询候选列表大小，为空使用配置值
+     * @param probes              IVFFlat探测的聚类数，为空使用配置值
+     * @param candidateMultiplier 压缩索引检索时的候选倍数，为空使用配置值
      * @return Flux<ChatResponse> 响应流，可以逐步接收AI生成的内容
      * @throws IllegalArgumentException 当model或message为空时抛出
      */
-    Flux<ChatResponse> generateStreamRag(String model, String ragTag, String message);
+    Flux<ChatResponse> generateStreamRag(String model, List<String> ragTags, String message, Integer efSearch, Integer probes, Integer candidateMultiplier);
+
+    /**
+     * 生成AI响应（精简流式方式）
+     * <p>每个SSE事件只含增量文本 {"d":"..."}，按时间或字符数合并后发送，结束时发送 done 事件 {"f":"STOP"}</p>
+     *
+     * @param model   使用的AI模型名称
+     * @param message 用户输入的消息内容
+     * @return Flux<ServerSentEvent<String>> 增量文本事件流
+     */
+    Flux<ServerSentEvent<String>> generateStreamDelta(String model, String message);
+
+    /**
+     * 生成AI基于Rag问答（精简流式方式），事件格式同 {@link #generateStreamDelta(String, String)}
+     *
+     * @param model   使用的AI模型
+     * @param ragTags 选择知识库，可选择多个，各知识库并行检索后合并
+     * @param message 用户输入的消息内容
+     * @param efSearch            HNSW查询候选列表大小，为空使用配置值
+     * @param probes              IVFFlat探测的聚类数，为空使用配置值
+     * @param candidateMultiplier 压缩索引检索时的候选倍数，为空使用配置值
+     * @return Flux<ServerSentEvent<String>> 增量文本事件流
+     */
+    Flux<ServerSentEvent<String>> generateStreamRagDelta(String model, List<String> ragTags, String message, Integer efSearch, Integer probes, Integer candidateMultiplier);
+
+    /**
+     * 基于服务端会话的多轮对话(流式异步方式)
+     * <p>历史对话保存在服务端，较早的对话会被压缩为摘要，客户端无需重复提交历史</p>
+     *
+     * @param model     使用的AI模型
+     * @param sessionId 会话ID，由 {@link IChatSessionService#createSession()} 创建
+     * @param message   用户输入的消息内容
+     * @return Flux<ChatResponse> 响应流，可以逐步接收AI生成的内容
+     * @throws IllegalArgumentException 当会话不存在或已过期时抛出
+     */
+    Flux<ChatResponse> generateStreamSession(String model, String sessionId, String message);
 }
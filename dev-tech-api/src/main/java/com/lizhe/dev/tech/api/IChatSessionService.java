@@ -0,0 +1,41 @@
+package com.lizhe.dev.tech.api;
+
+import com.lizhe.dev.tech.api.dto.ChatSessionDTO;
+import com.lizhe.dev.tech.api.response.Response;
+
+/**
+ * 服务端会话管理接口
+ * <p>
+ * 会话历史保存在服务端，对话时客户端只需提交会话ID和新问题，
+ * 对话接口见 {@link IAiService#generateStreamSession(String, String, String)}
+ * </p>
+ *
+ * @author 李哲
+ * @since 1.0
+ */
+public interface IChatSessionService {
+
+    /**
+     * 创建会话
+     *
+     * @return 会话ID
+     */
+    Response<String> createSession();
+
+    /**
+     * 查询会话状态
+     *
+     * @param sessionId 会话ID
+     * @return 会话轮数、摘要及历史Token数
+     */
+    Response<ChatSessionDTO> querySession(String sessionId);
+
+    /**
+     * 删除会话及其全部历史
+     *
+     * @param sessionId 会话ID
+     * @return 会话是否存在
+     */
+    Response<Boolean> deleteSession(String sessionId);
+
+}
@@ -0,0 +1,26 @@
+package com.lizhe.dev.tech.api;
+
+import com.lizhe.dev.tech.api.dto.GenerationQueueDTO;
+import com.lizhe.dev.tech.api.response.Response;
+
+import java.util.List;
+
+/**
+ * 模型生成调度接口
+ * <p>
+ * 对话接口按模型限制并发生成数并排队，队列已满时返回HTTP 429及Retry-After
+ * </p>
+ *
+ * @author 李哲
+ * @since 1.0
+ */
+public interface IGenerationService {
+
+    /**
+     * 查询各模型的生成队列状态
+     *
+     * @return 并发数、排队深度和等待耗时
+     */
+    Response<List<GenerationQueueDTO>> queryGenerationQueue();
+
+}
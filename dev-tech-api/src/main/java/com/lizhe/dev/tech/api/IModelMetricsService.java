@@ -0,0 +1,25 @@
+package com.lizhe.dev.tech.api;
+
+import com.lizhe.dev.tech.api.response.Response;
+
+import java.util.Map;
+
+/**
+ * 模型运行指标接口
+ * <p>
+ * 汇总向量化缓存命中率、模型加载次数与耗时等运行指标，未启用的组件不出现在结果中
+ * </p>
+ *
+ * @author 李哲
+ * @since 1.0
+ */
+public interface IModelMetricsService {
+
+    /**
+     * 查询模型运行指标
+     *
+     * @return 指标名称 -> 指标内容
+     */
+    Response<Map<String, Object>> queryModelMetrics();
+
+}
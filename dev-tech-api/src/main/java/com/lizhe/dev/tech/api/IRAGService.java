@@ -1,6 +1,8 @@
 package com.lizhe.dev.tech.api;
 
 
+import com.lizhe.dev.tech.api.dto.IngestionJobDTO;
+import com.lizhe.dev.tech.api.dto.VectorIndexDTO;
 import com.lizhe.dev.tech.api.response.Response;
 import org.springframework.web.multipart.MultipartFile;
 
@@ -14,6 +16,8 @@ import java.util.List;
  *     <li>知识库标签管理</li>
  *     <li>文档上传和解析</li>
  *     <li>Git仓库分析</li>
+ *     <li>导入任务状态查询</li>
+ *     <li>向量索引管理</li>
  * </ul>
  * </p>
  *
@@ -35,27 +39,66 @@ public interface IRAGService {
     /**
      * 上传文件到RAG知识库
      * <p>
-     * 将文件上传到指定标签的知识库中，系统会自动解析文档内容并进行向量化存储
+     * 将文件上传到指定标签的知识库中，系统会自动解析文档内容并进行向量化存储。
+     * 解析、切分、向量化和入库在后台异步执行，接口立即返回任务ID
      * </p>
      *
      * @param ragTag 知识库标签，用于分类存储文档
      * @param files  待上传的文件列表，支持多种文档格式
-     * @return 上传结果响应对象
+     * @return 上传结果响应对象，data为导入任务ID
      */
     Response<String> uploadFile(String ragTag, List<MultipartFile> files);
 
     /**
      * 分析Git仓库
      * <p>
-     * 分析指定的Git仓库，提取代码和文档信息并存储到知识库中
+     * 分析指定的Git仓库，提取代码和文档信息并存储到知识库中。
+     * 文件由导入任务引擎并行解析和向量化，完成后返回本次导入的吞吐统计
      * </p>
      *
      * @param repoUrl  Git仓库URL地址
      * @param userName Git用户名（如果需要认证）
      * @param token    Git访问令牌（如果需要认证）
-     * @return 分析结果响应对象
+     * @return 分析结果响应对象，包含文件数、片段数、耗时和吞吐统计
      * @throws Exception 当仓库访问失败或分析过程中出现错误时抛出异常
      */
-    Response<String> analyzeGitRepository(String repoUrl, String userName, String token) throws Exception;
+    Response<IngestionJobDTO> analyzeGitRepository(String repoUrl, String userName, String token) throws Exception;
+
+    /**
+     * 查询知识库导入任务状态
+     *
+     * @param jobId 导入任务ID，由 {@link #uploadFile(String, List)} 返回
+     * @return 任务状态响应对象
+     */
+    Response<IngestionJobDTO> queryIngestionJob(String jobId);
+
+    /**
+     * 删除知识库标签
+     * <p>
+     * 删除标签下的全部向量数据、导入记录和问答缓存，并从标签列表中移除。
+     * 分区存储模式下直接删除该标签的分区表
+     * </p>
+     *
+     * @param ragTag 知识库标签
+     * @return 删除结果响应对象
+     */
+    Response<Boolean> deleteRagTag(String ragTag);
+
+    /**
+     * 查询向量索引状态
+     *
+     * @return 索引类型、定义及最近一次构建情况
+     */
+    Response<VectorIndexDTO> queryVectorIndex();
+
+    /**
+     * 重建向量索引
+     * <p>
+     * 批量导入后触发，在后台并发构建新索引并替换旧索引，构建期间检索和导入不受影响
+     * </p>
+     *
+     * @return 触发后的索引状态
+     */
+    Response<VectorIndexDTO> rebuildVectorIndex();
 
 }
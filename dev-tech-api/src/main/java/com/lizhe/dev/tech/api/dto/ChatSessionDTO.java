@@ -0,0 +1,51 @@
+package com.lizhe.dev.tech.api.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+/**
+ * 服务端会话状态
+ *
+ * @author 李哲
+ * @since 1.0
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ChatSessionDTO implements Serializable {
+
+    /**
+     * 会话ID
+     */
+    private String sessionId;
+    /**
+     * 较早对话的滚动摘要，尚未压缩时为空
+     */
+    private String summary;
+    /**
+     * 已压缩进摘要的对话轮数
+     */
+    private int summarizedTurns;
+    /**
+     * 保留原文的对话轮数
+     */
+    private int turns;
+    /**
+     * 保留原文的对话Token数
+     */
+    private int historyTokens;
+    /**
+     * 创建时间戳（单位：毫秒）
+     */
+    private long createTime;
+    /**
+     * 最近一轮对话时间戳（单位：毫秒）
+     */
+    private long updateTime;
+
+}
@@ -0,0 +1,67 @@
+package com.lizhe.dev.tech.api.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+/**
+ * 模型生成队列状态
+ *
+ * @author 李哲
+ * @since 1.0
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class GenerationQueueDTO implements Serializable {
+
+    /**
+     * 通道名称：提供方/模型
+     */
+    private String lane;
+    /**
+     * 同时进行的生成数上限
+     */
+    private int maxConcurrency;
+    /**
+     * 排队请求数上限
+     */
+    private int maxQueueSize;
+    /**
+     * 正在进行的生成数
+     */
+    private int active;
+    /**
+     * 排队中的请求数
+     */
+    private int queueDepth;
+    /**
+     * 累计获得生成名额的请求数
+     */
+    private long granted;
+    /**
+     * 累计因队列已满被拒绝的请求数
+     */
+    private long rejected;
+    /**
+     * 累计合并到进行中的相同请求、未实际调用模型的请求数
+     */
+    private long coalesced;
+    /**
+     * 平均排队等待耗时（单位：毫秒）
+     */
+    private double avgWaitMillis;
+    /**
+     * 最长排队等待耗时（单位：毫秒）
+     */
+    private long maxWaitMillis;
+    /**
+     * 平均生成耗时（单位：毫秒）
+     */
+    private long avgGenerationMillis;
+
+}
@@ -0,0 +1,89 @@
+package com.lizhe.dev.tech.api.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * 知识库导入任务状态
+ *
+ * @author 李哲
+ * @since 1.0
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class IngestionJobDTO implements Serializable {
+
+    /**
+     * 任务ID
+     */
+    private String jobId;
+    /**
+     * 知识库标签
+     */
+    private String ragTag;
+    /**
+     * 任务状态：PENDING、RUNNING、SUCCESS、PARTIAL_SUCCESS、FAILED
+     */
+    private String status;
+    /**
+     * 文件总数
+     */
+    private int totalFiles;
+    /**
+     * 已完成文件数
+     */
+    private int completedFiles;
+    /**
+     * 失败文件数
+     */
+    private int failedFiles;
+    /**
+     * 已处理的文档片段数，包含跳过的重复片段
+     */
+    private long chunkCount;
+    /**
+     * 向量库中已存在、跳过向量化的文档片段数
+     */
+    private long duplicateChunks;
+    /**
+     * 解析阶段累计耗时（单位：毫秒）
+     */
+    private long parseMillis;
+    /**
+     * 文件总字节数
+     */
+    private long totalBytes;
+    /**
+     * 任务执行耗时（单位：毫秒），执行中为截至当前的耗时
+     */
+    private long elapsedMillis;
+    /**
+     * 文件吞吐（文件数/秒）
+     */
+    private double filesPerSecond;
+    /**
+     * 文档片段吞吐（片段数/秒）
+     */
+    private double chunksPerSecond;
+    /**
+     * 失败文件的错误信息
+     */
+    private List<String> errors;
+    /**
+     * 任务创建时间
+     */
+    private Date createTime;
+    /**
+     * 任务结束时间
+     */
+    private Date finishTime;
+
+}
@@ -0,0 +1,72 @@
+package com.lizhe.dev.tech.api.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.util.Date;
+
+/**
+ * 向量索引状态
+ *
+ * @author 李哲
+ * @since 1.0
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class VectorIndexDTO implements Serializable {
+
+    /**
+     * 配置的索引类型：HNSW、IVFFLAT、NONE
+     */
+    private String indexType;
+    /**
+     * 索引中向量的压缩方式：NONE、HALFVEC、BINARY
+     */
+    private String quantization;
+    /**
+     * 索引名称
+     */
+    private String indexName;
+    /**
+     * 数据库中当前的索引定义，索引不存在时为空
+     */
+    private String definition;
+    /**
+     * 索引状态：READY、MISSING、BUILDING、FAILED、DISABLED
+     */
+    private String state;
+    /**
+     * 索引占用空间（单位：字节），分区模式下为各分区之和
+     */
+    private long indexBytes;
+    /**
+     * 表数据占用空间（单位：字节），含原始精度向量
+     */
+    private long tableBytes;
+    /**
+     * 本节点启动以来的检索次数
+     */
+    private long searches;
+    /**
+     * 本节点平均检索耗时（单位：毫秒），含问题向量化
+     */
+    private double avgSearchMillis;
+    /**
+     * 最近一次构建的开始时间
+     */
+    private Date lastBuildTime;
+    /**
+     * 最近一次构建耗时（单位：毫秒）
+     */
+    private long lastBuildMillis;
+    /**
+     * 最近一次构建失败的原因
+     */
+    private String lastError;
+
+}
@@ -0,0 +1,314 @@
+package com.lizhe.dev.tech.config;
+
+import com.lizhe.trigger.metrics.ModelMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RBatch;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.ByteArrayCodec;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.document.MetadataMode;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingClient;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 带两级缓存的嵌入模型客户端
+ * <p>
+ * 以 模型名 + 文本SHA-256 为键缓存向量化结果：一级为进程内LRU缓存，二级为Redis缓存，两级都未命中时才调用被装饰的客户端。
+ * 知识库检索时对用户问题的向量化、以及导入时对已见过文本的向量化都可直接命中缓存。
+ * Redis不可用时退化为只使用进程内缓存，不影响向量化本身。
+ * 命中率通过 {@code /api/v1/model/metrics} 查询，并按查询次数间隔输出日志。
+ * </p>
+ *
+ * @author 李哲
+ */
+@Slf4j
+public class CachingEmbeddingClient implements EmbeddingClient, ModelMetrics {
+
+    private static final String REDIS_KEY_PREFIX = "ragEmbeddingCache:";
+
+    private final EmbeddingClient delegate;
+    private final String model;
+    private final RedissonClient redissonClient;
+    private final EmbeddingCacheProperties properties;
+
+    private final ReentrantLock localLock = new ReentrantLock();
+    private final LinkedHashMap<String, List<Double>> localCache;
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder localHits = new LongAdder();
+    private final LongAdder redisHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final AtomicLong lastLoggedRequests = new AtomicLong();
+
+    public CachingEmbeddingClient(EmbeddingClient delegate, String model, RedissonClient redissonClient, EmbeddingCacheProperties properties) {
+        this.delegate = delegate;
+        this.model = model;
+        this.redissonClient = redissonClient;
+        this.properties = properties;
+        int maxEntries = properties.getLocalMaxEntries();
+        this.localCache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, List<Double>> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    @Override
+    public EmbeddingResponse call(EmbeddingRequest request) {
+        List<String> texts = request.getInstructions();
+        List<List<Double>> vectors = lookup(texts, misses -> {
+            List<Embedding> results = delegate.call(new EmbeddingRequest(misses, request.getOptions())).getResults();
+            List<List<Double>> outputs = new ArrayList<>(results.size());
+            results.forEach(embedding -> outputs.add(embedding.getOutput()));
+            return outputs;
+        });
+        List<Embedding> embeddings = new ArrayList<>(vectors.size());
+        for (int i = 0; i < vectors.size(); i++) {
+            embeddings.add(new Embedding(vectors.get(i), i));
+        }
+        return new EmbeddingResponse(embeddings);
+    }
+
+    @Override
+    public List<Double> embed(String text) {
+        return lookup(List.of(text), delegate::embed).get(0);
+    }
+
+    @Override
+    public List<List<Double>> embed(List<String> texts) {
+        return lookup(texts, delegate::embed);
+    }
+
+    /**
+     * 部分客户端向量化文档时会拼接元数据，因此以格式化后的文档内容为键，并与纯文本的缓存键区分
+     */
+    @Override
+    public List<Double> embed(Document document) {
+        String key = cacheKey("doc", document.getFormattedContent(MetadataMode.EMBED));
+        requests.increment();
+        List<Double> vector = getLocal(key);
+        if (vector != null) {
+            localHits.increment();
+            return vector;
+        }
+        vector = getRedis(List.of(key)).get(key);
+        if (vector != null) {
+            redisHits.increment();
+        } else {
+            misses.increment();
+            vector = delegate.embed(document);
+            putRedis(Map.of(key, vector));
+        }
+        putLocal(key, vector);
+        logStats();
+        return vector;
+    }
+
+    @Override
+    public int dimensions() {
+        return delegate.dimensions();
+    }
+
+    @Override
+    public String metricsName() {
+        return "embeddingCache";
+    }
+
+    /**
+     * 缓存统计
+     *
+     * @return 查询次数、各级命中次数及命中率
+     */
+    @Override
+    public Map<String, Object> stats() {
+        long total = requests.sum();
+        long local = localHits.sum();
+        long redis = redisHits.sum();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("model", model);
+        stats.put("requests", total);
+        stats.put("localHits", local);
+        stats.put("redisHits", redis);
+        stats.put("misses", misses.sum());
+        stats.put("hitRate", total == 0 ? 0.0 : (double) (local + redis) / total);
+        localLock.lock();
+        try {
+            stats.put("localEntries", localCache.size());
+        } finally {
+            localLock.unlock();
+        }
+        return stats;
+    }
+
+    private List<List<Double>> lookup(List<String> texts, Loader loader) {
+        int size = texts.size();
+        List<List<Double>> vectors = new ArrayList<>(Collections.nCopies(size, null));
+        String[] keys = new String[size];
+        requests.add(size);
+
+        // 一级缓存
+        List<Integer> localMisses = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            keys[i] = cacheKey("text", texts.get(i));
+            vectors.set(i, getLocal(keys[i]));
+            if (vectors.get(i) == null) {
+                localMisses.add(i);
+            }
+        }
+        localHits.add(size - localMisses.size());
+
+        // 二级缓存
+        List<Integer> redisMisses = new ArrayList<>();
+        if (!localMisses.isEmpty()) {
+            List<String> redisKeys = new ArrayList<>(localMisses.size());
+            localMisses.forEach(i -> redisKeys.add(keys[i]));
+            Map<String, List<Double>> found = getRedis(redisKeys);
+            for (int i : localMisses) {
+                List<Double> vector = found.get(keys[i]);
+                if (vector == null) {
+                    redisMisses.add(i);
+                } else {
+                    vectors.set(i, vector);
+                    putLocal(keys[i], vector);
+                }
+            }
+            redisHits.add(localMisses.size() - redisMisses.size());
+        }
+
+        // 均未命中，批量调用模型；同一批次内重复的文本只向量化一次
+        if (!redisMisses.isEmpty()) {
+            Map<String, Integer> uniqueIndex = new LinkedHashMap<>();
+            List<String> uniqueTexts = new ArrayList<>();
+            for (int i : redisMisses) {
+                if (uniqueIndex.putIfAbsent(keys[i], uniqueTexts.size()) == null) {
+                    uniqueTexts.add(texts.get(i));
+                }
+            }
+            misses.add(uniqueTexts.size());
+            List<List<Double>> loaded = loader.load(uniqueTexts);
+            Map<String, List<Double>> toStore = new HashMap<>();
+            for (int i : redisMisses) {
+                List<Double> vector = loaded.get(uniqueIndex.get(keys[i]));
+                vectors.set(i, vector);
+                toStore.put(keys[i], vector);
+            }
+            toStore.forEach(this::putLocal);
+            putRedis(toStore);
+        }
+
+        logStats();
+        return vectors;
+    }
+
+    private List<Double> getLocal(String key) {
+        localLock.lock();
+        try {
+            return localCache.get(key);
+        } finally {
+            localLock.unlock();
+        }
+    }
+
+    private void putLocal(String key, List<Double> vector) {
+        localLock.lock();
+        try {
+            localCache.put(key, vector);
+        } finally {
+            localLock.unlock();
+        }
+    }
+
+    private Map<String, List<Double>> getRedis(List<String> keys) {
+        if (!properties.isRedisEnabled()) {
+            return Map.of();
+        }
+        try {
+            Map<String, byte[]> values = redissonClient.getBuckets(ByteArrayCodec.INSTANCE).get(keys.toArray(new String[0]));
+            Map<String, List<Double>> vectors = new HashMap<>(values.size());
+            values.forEach((key, bytes) -> vectors.put(key, decode(bytes)));
+            return vectors;
+        } catch (Exception e) {
+            log.warn("读取Redis向量缓存失败，直接调用模型 {}", e.getMessage());
+            return Map.of();
+        }
+    }
+
+    private void putRedis(Map<String, List<Double>> vectors) {
+        if (!properties.isRedisEnabled() || vectors.isEmpty()) {
+            return;
+        }
+        try {
+            RBatch batch = redissonClient.createBatch();
+            vectors.forEach((key, vector) -> batch.<byte[]>getBucket(key, ByteArrayCodec.INSTANCE)
+                    .setAsync(encode(vector), properties.getRedisTtlHours(), TimeUnit.HOURS));
+            batch.executeAsync();
+        } catch (Exception e) {
+            log.warn("写入Redis向量缓存失败 {}", e.getMessage());
+        }
+    }
+
+    private String cacheKey(String type, String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest(text.getBytes(StandardCharsets.UTF_8));
+            return REDIS_KEY_PREFIX + model + ":" + type + ":" + HexFormat.of().formatHex(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 按double原样编码，缓存命中与直接调用模型得到的向量完全一致
+     */
+    private static byte[] encode(List<Double> vector) {
+        ByteBuffer buffer = ByteBuffer.allocate(vector.size() * Double.BYTES);
+        vector.forEach(buffer::putDouble);
+        return buffer.array();
+    }
+
+    private static List<Double> decode(byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        List<Double> vector = new ArrayList<>(bytes.length / Double.BYTES);
+        while (buffer.hasRemaining()) {
+            vector.add(buffer.getDouble());
+        }
+        return vector;
+    }
+
+    private void logStats() {
+        long interval = properties.getStatsLogInterval();
+        if (interval <= 0) {
+            return;
+        }
+        long logged = lastLoggedRequests.get();
+        long total = requests.sum();
+        if (total - logged >= interval && lastLoggedRequests.compareAndSet(logged, total)) {
+            log.info("向量缓存统计 {}", stats());
+        }
+    }
+
+    @FunctionalInterface
+    private interface Loader {
+        List<List<Double>> load(List<String> texts);
+    }
+
+}
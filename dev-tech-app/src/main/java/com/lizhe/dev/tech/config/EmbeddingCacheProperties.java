@@ -0,0 +1,36 @@
+package com.lizhe.dev.tech.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * 向量化结果缓存配置
+ *
+ * @author 李哲
+ */
+@Data
+@ConfigurationProperties(prefix = "rag.embedding-cache", ignoreInvalidFields = true)
+public class EmbeddingCacheProperties {
+
+    /**
+     * 是否启用向量化结果缓存，默认为true
+     */
+    private boolean enabled = true;
+    /**
+     * 进程内缓存的最大条目数，超过后按最近最少使用淘汰，默认为10000
+     */
+    private int localMaxEntries = 10000;
+    /**
+     * 是否启用Redis二级缓存，默认为true
+     */
+    private boolean redisEnabled = true;
+    /**
+     * Redis缓存过期时间（单位：小时），默认为168
+     */
+    private long redisTtlHours = 168;
+    /**
+     * 每隔多少次查询输出一次命中率日志，默认为1000，0表示不输出
+     */
+    private long statsLogInterval = 1000;
+
+}
@@ -0,0 +1,226 @@
+package com.lizhe.dev.tech.config;
+
+import com.lizhe.trigger.metrics.ModelMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.web.client.RestClient;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * Ollama模型常驻管理
+ * <p>
+ * 应用就绪后在后台向每个Ollama节点预加载配置的对话模型和嵌入模型，之后按固定间隔通过 {@code /api/ps} 检查常驻情况：
+ * 仍常驻的模型刷新keep_alive，已被Ollama卸载的模型重新加载并计为一次冷启动，
+ * 避免用户请求承担数秒的模型加载时间。冷启动次数与加载耗时通过 {@code /api/v1/model/metrics} 查询，并随每次检查输出日志。
+ * </p>
+ *
+ * @author 李哲
+ */
+@Slf4j
+public class ModelResidencyManager implements ApplicationListener<ApplicationReadyEvent>, DisposableBean, ModelMetrics {
+
+    private final Map<String, RestClient> restClients = new LinkedHashMap<>();
+    private final ModelResidencyProperties properties;
+    private final ScheduledExecutorService scheduler;
+
+    private final Map<String, ModelStats> models = new LinkedHashMap<>();
+    private final LongAdder pings = new LongAdder();
+    private final LongAdder pingFailures = new LongAdder();
+
+    public ModelResidencyManager(List<String> baseUrls, ModelResidencyProperties properties) {
+        this.properties = properties;
+        SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+        requestFactory.setConnectTimeout((int) Duration.ofSeconds(5).toMillis());
+        requestFactory.setReadTimeout((int) Duration.ofSeconds(properties.getLoadTimeoutSeconds()).toMillis());
+        baseUrls.stream().distinct().forEach(baseUrl ->
+                restClients.put(baseUrl, RestClient.builder().baseUrl(baseUrl).requestFactory(requestFactory).build()));
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ollama-residency");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // 多节点时每个节点都预热全部模型，负载均衡的模型亲和才能生效
+        for (String node : restClients.keySet()) {
+            String suffix = restClients.size() > 1 ? "@" + node : "";
+            properties.getChatModels().forEach(model -> models.put(model + suffix, new ModelStats(model, node, false)));
+            properties.getEmbeddingModels().forEach(model -> models.put(model + suffix, new ModelStats(model, node, true)));
+        }
+    }
+
+    @Override
+    public void onApplicationEvent(ApplicationReadyEvent event) {
+        if (!properties.isEnabled() || models.isEmpty()) {
+            return;
+        }
+        log.info("开始预热Ollama模型 {} keep_alive:{}", models.keySet(), properties.getKeepAlive());
+        scheduler.scheduleWithFixedDelay(this::check, 0, properties.getPingIntervalSeconds(), TimeUnit.SECONDS);
+    }
+
+    @Override
+    public void destroy() {
+        scheduler.shutdownNow();
+    }
+
+    @Override
+    public String metricsName() {
+        return "residency";
+    }
+
+    /**
+     * 各模型的常驻状态、冷启动次数与加载耗时
+     */
+    @Override
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("pings", pings.sum());
+        stats.put("pingFailures", pingFailures.sum());
+        Map<String, Object> modelStats = new LinkedHashMap<>();
+        models.forEach((key, model) -> modelStats.put(key, model.toMap()));
+        stats.put("models", modelStats);
+        return stats;
+    }
+
+    private void check() {
+        pings.increment();
+        for (String node : restClients.keySet()) {
+            check(node);
+        }
+        log.info("Ollama模型常驻统计 {}", stats());
+    }
+
+    private void check(String node) {
+        Map<String, Map<String, Object>> resident;
+        try {
+            resident = residentModels(restClients.get(node));
+        } catch (Exception e) {
+            pingFailures.increment();
+            log.warn("查询Ollama常驻模型失败 {} {}", node, e.toString());
+            return;
+        }
+        for (ModelStats model : models.values()) {
+            if (!model.node.equals(node)) {
+                continue;
+            }
+            Map<String, Object> info = resident.get(normalize(model.name));
+            model.resident = info != null;
+            try {
+                long nanos = load(model);
+                if (info == null) {
+                    // 未常驻：本次为实际加载，计入冷启动
+                    model.recordLoad(nanos);
+                    log.info("Ollama模型已加载 model:{} node:{} 耗时:{}ms 累计冷启动:{}", model.name, node, nanos / 1_000_000, model.loads.sum());
+                } else {
+                    model.sizeVram = info.get("size_vram") instanceof Number number ? number.longValue() : 0;
+                }
+                model.resident = true;
+                model.lastPingTime = System.currentTimeMillis();
+            } catch (Exception e) {
+                model.failures.increment();
+                log.warn("Ollama模型加载或保活失败 model:{} node:{} {}", model.name, node, e.toString());
+            }
+        }
+    }
+
+    /**
+     * 加载模型或刷新常驻时长，返回加载耗时（单位：纳秒）
+     */
+    private long load(ModelStats model) {
+        RestClient restClient = restClients.get(model.node);
+        long start = System.nanoTime();
+        Map<String, Object> body = new HashMap<>();
+        body.put("model", model.name);
+        body.put("keep_alive", properties.getKeepAlive());
+        if (model.embedding) {
+            // 嵌入模型不支持空请求加载，以一次极短的向量化代替
+            body.put("prompt", "ping");
+            restClient.post().uri("/api/embeddings").contentType(MediaType.APPLICATION_JSON).body(body).retrieve().toBodilessEntity();
+            return System.nanoTime() - start;
+        }
+        // 不带prompt的生成请求只加载模型，响应中的load_duration为实际加载耗时
+        body.put("stream", false);
+        Map<?, ?> response = restClient.post().uri("/api/generate").contentType(MediaType.APPLICATION_JSON).body(body).retrieve().body(Map.class);
+        if (response != null && response.get("load_duration") instanceof Number loadDuration && loadDuration.longValue() > 0) {
+            return loadDuration.longValue();
+        }
+        return System.nanoTime() - start;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Map<String, Object>> residentModels(RestClient restClient) {
+        Map<String, Object> response = restClient.get().uri("/api/ps").retrieve().body(Map.class);
+        if (response == null || !(response.get("models") instanceof List<?> list)) {
+            return Map.of();
+        }
+        return list.stream()
+                .map(item -> (Map<String, Object>) item)
+                .collect(Collectors.toMap(item -> normalize(String.valueOf(item.get("name"))), item -> item, (a, b) -> a));
+    }
+
+    /**
+     * Ollama返回的模型名带标签，未写标签的配置等价于 :latest
+     */
+    private static String normalize(String model) {
+        return model.contains(":") ? model : model + ":latest";
+    }
+
+    private static class ModelStats {
+
+        private final String name;
+        private final String node;
+        private final boolean embedding;
+        private final LongAdder loads = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final AtomicLong totalLoadNanos = new AtomicLong();
+        private final AtomicLong maxLoadNanos = new AtomicLong();
+        private volatile long lastLoadNanos;
+        private volatile long lastPingTime;
+        private volatile long sizeVram;
+        private volatile boolean resident;
+
+        private ModelStats(String name, String node, boolean embedding) {
+            this.name = name;
+            this.node = node;
+            this.embedding = embedding;
+        }
+
+        private void recordLoad(long nanos) {
+            loads.increment();
+            lastLoadNanos = nanos;
+            totalLoadNanos.addAndGet(nanos);
+            maxLoadNanos.accumulateAndGet(nanos, Math::max);
+        }
+
+        private Map<String, Object> toMap() {
+            long count = loads.sum();
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("type", embedding ? "embedding" : "chat");
+            map.put("node", node);
+            map.put("resident", resident);
+            map.put("coldStarts", count);
+            map.put("lastLoadMillis", lastLoadNanos / 1_000_000);
+            map.put("avgLoadMillis", count == 0 ? 0 : totalLoadNanos.get() / count / 1_000_000);
+            map.put("maxLoadMillis", maxLoadNanos.get() / 1_000_000);
+            map.put("failures", failures.sum());
+            map.put("sizeVram", sizeVram);
+            map.put("lastPingTime", lastPingTime);
+            return map;
+        }
+
+    }
+
+}
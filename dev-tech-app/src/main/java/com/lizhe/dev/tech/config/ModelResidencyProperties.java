@@ -0,0 +1,43 @@
+package com.lizhe.dev.tech.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Ollama模型常驻配置
+ *
+ * @author 李哲
+ */
+@Data
+@ConfigurationProperties(prefix = "ollama.residency", ignoreInvalidFields = true)
+public class ModelResidencyProperties {
+
+    /**
+     * 是否启用模型预热与保活，默认为true
+     */
+    private boolean enabled = true;
+    /**
+     * 需要常驻的对话模型，如 deepseek-r1:1.5b
+     */
+    private List<String> chatModels = new ArrayList<>();
+    /**
+     * 需要常驻的嵌入模型，如 nomic-embed-text
+     */
+    private List<String> embeddingModels = new ArrayList<>();
+    /**
+     * 每次加载或保活时设置的常驻时长，Ollama的keep_alive参数，默认为30m
+     */
+    private String keepAlive = "30m";
+    /**
+     * 保活检查间隔（单位：秒），应小于keepAlive，默认为240
+     */
+    private long pingIntervalSeconds = 240;
+    /**
+     * 加载模型的超时时间（单位：秒），默认为300
+     */
+    private int loadTimeoutSeconds = 300;
+
+}
@@ -1,5 +1,7 @@
 package com.lizhe.dev.tech.config;
 
+import org.redisson.api.RedissonClient;
+import org.springframework.ai.embedding.EmbeddingClient;
 import org.springframework.ai.ollama.OllamaChatClient;
 import org.springframework.ai.ollama.OllamaEmbeddingClient;
 import org.springframework.ai.ollama.api.OllamaApi;
@@ -9,17 +11,28 @@ import org.springframework.ai.openai.api.OpenAiApi;
 import org.springframework.ai.transformer.splitter.TokenTextSplitter;
 import org.springframework.ai.vectorstore.PgVectorStore;
 import org.springframework.ai.vectorstore.SimpleVectorStore;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.jdbc.core.JdbcTemplate;
 
+import java.util.List;
+
 @Configuration
+@EnableConfigurationProperties({EmbeddingCacheProperties.class, ModelResidencyProperties.class, OllamaPoolProperties.class})
 public class OllamaConfig {
 
+    /**
+     * 配置了多个Ollama节点时使用负载均衡的节点池，对话与嵌入客户端共用
+     */
     @Bean
-    public OllamaApi ollamaApi(@Value("${spring.ai.ollama.base-url}") String baseUrl) {
-        return new OllamaApi(baseUrl);
+    public OllamaApi ollamaApi(@Value("${spring.ai.ollama.base-url}") String baseUrl, OllamaPoolProperties poolProperties) {
+        if (poolProperties.getEndpoints().isEmpty()) {
+            return new OllamaApi(baseUrl);
+        }
+        return new RoutingOllamaApi(new OllamaLoadBalancer(poolProperties.getEndpoints(), poolProperties));
     }
 
     @Bean
@@ -32,33 +45,54 @@ public class OllamaConfig {
         return new OllamaChatClient(ollamaApi);
     }
 
+    /**
+     * Ollama模型预热与保活，避免首个请求或空闲后的请求承担模型加载时间
+     */
+    @Bean
+    public ModelResidencyManager modelResidencyManager(@Value("${spring.ai.ollama.base-url}") String baseUrl, ModelResidencyProperties properties,
+                                                       OllamaPoolProperties poolProperties) {
+        List<String> baseUrls = poolProperties.getEndpoints().isEmpty() ? List.of(baseUrl) : poolProperties.getEndpoints();
+        return new ModelResidencyManager(baseUrls, properties);
+    }
+
     @Bean
     public TokenTextSplitter tokenTextSplitter(){
         return new TokenTextSplitter();
     }
 
-    @Bean
-    public SimpleVectorStore vectorStore(@Value("${spring.ai.rag.embed}") String model, OllamaApi ollamaApi, OpenAiApi openAiApi) {
+    /**
+     * 知识库向量化使用的嵌入模型客户端，向量库与后台导入任务共用同一实例，
+     * 启用缓存时外层包装两级向量化结果缓存
+     */
+    @Bean("ragEmbeddingClient")
+    public EmbeddingClient ragEmbeddingClient(@Value("${spring.ai.rag.embed}") String model, OllamaApi ollamaApi, OpenAiApi openAiApi,
+                                              RedissonClient redissonClient, EmbeddingCacheProperties cacheProperties) {
+        EmbeddingClient embeddingClient;
         if ("nomic-embed-text".equalsIgnoreCase(model)) {
-            OllamaEmbeddingClient embeddingClient = new OllamaEmbeddingClient(ollamaApi);
-            embeddingClient.withDefaultOptions(OllamaOptions.create().withModel("nomic-embed-text"));
-            return new SimpleVectorStore(embeddingClient);
+            OllamaEmbeddingClient ollamaEmbeddingClient = new OllamaEmbeddingClient(ollamaApi);
+            ollamaEmbeddingClient.withDefaultOptions(OllamaOptions.create().withModel("nomic-embed-text"));
+            embeddingClient = ollamaEmbeddingClient;
         } else {
-            OpenAiEmbeddingClient embeddingClient = new OpenAiEmbeddingClient(openAiApi);
-            return new SimpleVectorStore(embeddingClient);
+            embeddingClient = new OpenAiEmbeddingClient(openAiApi);
+        }
+        if (!cacheProperties.isEnabled()) {
+            return embeddingClient;
         }
+        return new CachingEmbeddingClient(embeddingClient, model, redissonClient, cacheProperties);
+    }
+
+    @Bean
+    public SimpleVectorStore vectorStore(@Qualifier("ragEmbeddingClient") EmbeddingClient embeddingClient) {
+        return new SimpleVectorStore(embeddingClient);
     }
 
 
     @Bean
-    public PgVectorStore pgVectorStore(@Value("${spring.ai.rag.embed}") String model, OllamaApi ollamaApi, OpenAiApi openAiApi, JdbcTemplate jdbcTemplate) {
+    public PgVectorStore pgVectorStore(@Value("${spring.ai.rag.embed}") String model, @Qualifier("ragEmbeddingClient") EmbeddingClient embeddingClient, JdbcTemplate jdbcTemplate) {
         if ("nomic-embed-text".equalsIgnoreCase(model)) {
-            OllamaEmbeddingClient embeddingClient = new OllamaEmbeddingClient(ollamaApi);
-            embeddingClient.withDefaultOptions(OllamaOptions.create().withModel("nomic-embed-text"));
             // 使用构造函数创建PgVectorStore，并设置向量维度为768
             return new PgVectorStore(jdbcTemplate, embeddingClient, 1536);
         } else {
-            OpenAiEmbeddingClient embeddingClient = new OpenAiEmbeddingClient(openAiApi);
             return new PgVectorStore(jdbcTemplate, embeddingClient);
         }
     }
@@ -0,0 +1,135 @@
+package com.lizhe.dev.tech.config;
+
+import org.springframework.ai.ollama.api.OllamaApi;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Ollama节点的路由状态：进行中的请求数、延迟的指数加权移动平均、连续失败次数及已加载的模型
+ *
+ * @author 李哲
+ */
+public class OllamaEndpoint {
+
+    private final String baseUrl;
+    private final OllamaApi api;
+    private final OllamaPoolProperties properties;
+
+    private final AtomicInteger outstanding = new AtomicInteger();
+    /**
+     * 以 {@link Double#doubleToLongBits(double)} 保存的延迟平均值（单位：毫秒），无锁更新
+     */
+    private final AtomicLong ewmaMillisBits = new AtomicLong(Double.doubleToLongBits(0));
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder ejections = new LongAdder();
+    private volatile long ejectedUntil;
+    private volatile Set<String> loadedModels = Set.of();
+
+    public OllamaEndpoint(String baseUrl, OllamaPoolProperties properties) {
+        this.baseUrl = baseUrl;
+        this.api = new OllamaApi(baseUrl);
+        this.properties = properties;
+    }
+
+    public String baseUrl() {
+        return baseUrl;
+    }
+
+    public OllamaApi api() {
+        return api;
+    }
+
+    public boolean isHealthy() {
+        return System.currentTimeMillis() >= ejectedUntil;
+    }
+
+    public boolean hasModel(String model) {
+        return loadedModels.contains(model);
+    }
+
+    public int outstanding() {
+        return outstanding.get();
+    }
+
+    /**
+     * 路由得分，越小越优先：进行中的请求越多、延迟越高得分越大
+     */
+    public double score() {
+        return (outstanding.get() + 1) * Math.max(1.0, ewmaMillis());
+    }
+
+    public double ewmaMillis() {
+        return Double.longBitsToDouble(ewmaMillisBits.get());
+    }
+
+    void begin() {
+        requests.increment();
+        outstanding.incrementAndGet();
+    }
+
+    void end() {
+        outstanding.decrementAndGet();
+    }
+
+    /**
+     * 记录一次成功响应的延迟，流式请求为首个响应的延迟
+     */
+    void recordLatency(long nanos) {
+        double millis = nanos / 1_000_000.0;
+        double alpha = properties.getEwmaAlpha();
+        ewmaMillisBits.getAndUpdate(bits -> {
+            double current = Double.longBitsToDouble(bits);
+            return Double.doubleToLongBits(current == 0 ? millis : alpha * millis + (1 - alpha) * current);
+        });
+        consecutiveFailures.set(0);
+    }
+
+    /**
+     * 记录一次连接失败，连续失败达到阈值时摘除节点
+     *
+     * @return 本次是否摘除了节点
+     */
+    boolean recordFailure() {
+        failures.increment();
+        if (consecutiveFailures.incrementAndGet() >= properties.getFailureThreshold() && isHealthy()) {
+            ejectedUntil = System.currentTimeMillis() + properties.getEjectMillis();
+            ejections.increment();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 健康检查成功：恢复节点并刷新已加载的模型
+     *
+     * @return 节点此前是否处于摘除状态
+     */
+    boolean recordHealthy(Set<String> models) {
+        boolean recovered = !isHealthy();
+        loadedModels = models;
+        consecutiveFailures.set(0);
+        ejectedUntil = 0;
+        return recovered;
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("baseUrl", baseUrl);
+        stats.put("healthy", isHealthy());
+        stats.put("outstanding", outstanding.get());
+        stats.put("ewmaMillis", Math.round(ewmaMillis()));
+        stats.put("requests", requests.sum());
+        stats.put("failures", failures.sum());
+        stats.put("ejections", ejections.sum());
+        stats.put("loadedModels", loadedModels);
+        return stats;
+    }
+
+}
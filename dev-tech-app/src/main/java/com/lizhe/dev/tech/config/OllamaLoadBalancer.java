@@ -0,0 +1,195 @@
+package com.lizhe.dev.tech.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.ollama.api.OllamaApi;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestClient;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import reactor.core.publisher.Flux;
+
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Ollama多节点负载均衡
+ * <p>
+ * 按 (进行中的请求数 + 1) × 延迟移动平均 选择得分最低的节点；开启模型亲和时优先选择已加载该模型的节点，
+ * 这些节点都较忙时才放宽到其他节点，避免不必要的模型加载。
+ * 后台定时请求各节点的 {@code /api/ps} 作为健康检查并刷新已加载的模型，
+ * 连接失败（包括业务请求的连接失败）连续达到阈值的节点被摘除一段时间；所有节点都被摘除时仍尝试得分最低的节点。
+ * 业务请求连接失败且尚未收到任何响应时换一个节点重试。
+ * </p>
+ *
+ * @author 李哲
+ */
+@Slf4j
+public class OllamaLoadBalancer implements DisposableBean {
+
+    private final List<OllamaEndpoint> endpoints;
+    private final Map<OllamaEndpoint, RestClient> healthClients;
+    private final OllamaPoolProperties properties;
+    private final ScheduledExecutorService scheduler;
+
+    public OllamaLoadBalancer(List<String> baseUrls, OllamaPoolProperties properties) {
+        if (baseUrls.isEmpty()) {
+            throw new IllegalArgumentException("Ollama节点地址不能为空");
+        }
+        this.properties = properties;
+        this.endpoints = baseUrls.stream().distinct().map(baseUrl -> new OllamaEndpoint(baseUrl, properties)).toList();
+        SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+        requestFactory.setConnectTimeout(properties.getHealthCheckTimeoutMillis());
+        requestFactory.setReadTimeout(properties.getHealthCheckTimeoutMillis());
+        this.healthClients = endpoints.stream().collect(Collectors.toMap(Function.identity(),
+                endpoint -> RestClient.builder().baseUrl(endpoint.baseUrl()).requestFactory(requestFactory).build()));
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ollama-health");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::checkHealth, 0, properties.getHealthCheckIntervalMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void destroy() {
+        scheduler.shutdownNow();
+    }
+
+    public List<OllamaEndpoint> endpoints() {
+        return endpoints;
+    }
+
+    /**
+     * 选择处理该模型请求的节点
+     *
+     * @param model   模型名称
+     * @param exclude 本次请求已失败的节点
+     */
+    public OllamaEndpoint choose(String model, Set<OllamaEndpoint> exclude) {
+        List<OllamaEndpoint> candidates = endpoints.stream()
+                .filter(endpoint -> !exclude.contains(endpoint) && endpoint.isHealthy())
+                .toList();
+        if (candidates.isEmpty()) {
+            // 全部摘除时不拒绝请求，仍按得分尝试
+            candidates = endpoints.stream().filter(endpoint -> !exclude.contains(endpoint)).toList();
+        }
+        if (candidates.isEmpty()) {
+            candidates = endpoints;
+        }
+        if (properties.isModelAffinity() && model != null) {
+            String normalized = normalize(model);
+            List<OllamaEndpoint> loaded = candidates.stream()
+                    .filter(endpoint -> endpoint.hasModel(normalized))
+                    .filter(endpoint -> endpoint.outstanding() < properties.getAffinityMaxOutstanding())
+                    .toList();
+            if (!loaded.isEmpty()) {
+                candidates = loaded;
+            }
+        }
+        return candidates.stream().min(Comparator.comparingDouble(OllamaEndpoint::score)).orElseThrow();
+    }
+
+    /**
+     * 在选中的节点上执行同步请求，连接失败时换节点重试
+     */
+    public <T> T execute(String model, Function<OllamaApi, T> call) {
+        Set<OllamaEndpoint> failed = new HashSet<>();
+        while (true) {
+            OllamaEndpoint endpoint = choose(model, failed);
+            endpoint.begin();
+            long start = System.nanoTime();
+            try {
+                T result = call.apply(endpoint.api());
+                endpoint.recordLatency(System.nanoTime() - start);
+                return result;
+            } catch (ResourceAccessException e) {
+                onFailure(endpoint, e);
+                failed.add(endpoint);
+                if (failed.size() >= Math.min(properties.getMaxAttempts(), endpoints.size())) {
+                    throw e;
+                }
+            } finally {
+                endpoint.end();
+            }
+        }
+    }
+
+    /**
+     * 在选中的节点上执行流式请求，以首个响应的延迟更新节点延迟；
+     * 连接失败且尚未收到任何响应时换节点重试
+     */
+    public <T> Flux<T> stream(String model, Function<OllamaApi, Flux<T>> call) {
+        return Flux.defer(() -> stream(model, call, new HashSet<>()));
+    }
+
+    private <T> Flux<T> stream(String model, Function<OllamaApi, Flux<T>> call, Set<OllamaEndpoint> failed) {
+        OllamaEndpoint endpoint = choose(model, failed);
+        endpoint.begin();
+        long start = System.nanoTime();
+        AtomicBoolean emitted = new AtomicBoolean();
+        return call.apply(endpoint.api())
+                .doOnNext(item -> {
+                    if (emitted.compareAndSet(false, true)) {
+                        endpoint.recordLatency(System.nanoTime() - start);
+                    }
+                })
+                .doFinally(signal -> endpoint.end())
+                .onErrorResume(WebClientRequestException.class, e -> {
+                    onFailure(endpoint, e);
+                    failed.add(endpoint);
+                    if (emitted.get() || failed.size() >= Math.min(properties.getMaxAttempts(), endpoints.size())) {
+                        return Flux.error(e);
+                    }
+                    return stream(model, call, failed);
+                });
+    }
+
+    public List<Map<String, Object>> stats() {
+        return endpoints.stream().map(OllamaEndpoint::stats).toList();
+    }
+
+    private void onFailure(OllamaEndpoint endpoint, Exception e) {
+        if (endpoint.recordFailure()) {
+            log.warn("Ollama节点连续失败，摘除{}ms {} {}", properties.getEjectMillis(), endpoint.baseUrl(), e.toString());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void checkHealth() {
+        for (OllamaEndpoint endpoint : endpoints) {
+            try {
+                Map<String, Object> response = healthClients.get(endpoint).get().uri("/api/ps").retrieve().body(Map.class);
+                Set<String> models = new HashSet<>();
+                if (response != null && response.get("models") instanceof List<?> list) {
+                    for (Object item : list) {
+                        models.add(normalize(String.valueOf(((Map<String, Object>) item).get("name"))));
+                    }
+                }
+                if (endpoint.recordHealthy(Set.copyOf(models))) {
+                    log.info("Ollama节点恢复 {} 已加载模型:{}", endpoint.baseUrl(), models);
+                }
+            } catch (Exception e) {
+                onFailure(endpoint, e);
+                log.debug("Ollama节点健康检查失败 {} {}", endpoint.baseUrl(), e.toString());
+            }
+        }
+    }
+
+    /**
+     * Ollama返回的模型名带标签，未写标签的模型等价于 :latest
+     */
+    static String normalize(String model) {
+        return model.contains(":") ? model : model + ":latest";
+    }
+
+}
@@ -0,0 +1,55 @@
+package com.lizhe.dev.tech.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Ollama多节点负载均衡配置
+ *
+ * @author 李哲
+ */
+@Data
+@ConfigurationProperties(prefix = "ollama.pool", ignoreInvalidFields = true)
+public class OllamaPoolProperties {
+
+    /**
+     * Ollama节点地址列表，为空时只使用 spring.ai.ollama.base-url 单个节点
+     */
+    private List<String> endpoints = new ArrayList<>();
+    /**
+     * 健康检查间隔（单位：毫秒），检查同时刷新节点已加载的模型，默认为5000
+     */
+    private long healthCheckIntervalMillis = 5000;
+    /**
+     * 健康检查超时时间（单位：毫秒），默认为2000
+     */
+    private int healthCheckTimeoutMillis = 2000;
+    /**
+     * 连续失败多少次后摘除节点，默认为3
+     */
+    private int failureThreshold = 3;
+    /**
+     * 节点被摘除的时长（单位：毫秒），期满或健康检查恢复后重新参与路由，默认为30000
+     */
+    private long ejectMillis = 30000;
+    /**
+     * 延迟指数加权移动平均的平滑系数，越大越偏向最近的请求，默认为0.3
+     */
+    private double ewmaAlpha = 0.3;
+    /**
+     * 是否优先路由到已加载该模型的节点，默认为true
+     */
+    private boolean modelAffinity = true;
+    /**
+     * 已加载模型的节点进行中的请求数达到该值时，允许路由到未加载该模型的节点，默认为4
+     */
+    private int affinityMaxOutstanding = 4;
+    /**
+     * 连接失败时最多尝试的节点数，默认为2
+     */
+    private int maxAttempts = 2;
+
+}
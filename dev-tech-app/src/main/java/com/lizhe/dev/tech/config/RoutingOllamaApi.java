@@ -0,0 +1,59 @@
+package com.lizhe.dev.tech.config;
+
+import org.springframework.ai.ollama.api.OllamaApi;
+import org.springframework.beans.factory.DisposableBean;
+import reactor.core.publisher.Flux;
+
+/**
+ * 将请求分发到多个Ollama节点的 {@link OllamaApi}
+ * <p>
+ * 对话客户端和嵌入客户端只依赖 {@link OllamaApi}，替换为该实现即可在不改动调用方的情况下使用节点池，
+ * 每个请求按其模型由 {@link OllamaLoadBalancer} 选择节点。
+ * </p>
+ *
+ * @author 李哲
+ */
+public class RoutingOllamaApi extends OllamaApi implements DisposableBean {
+
+    private final OllamaLoadBalancer loadBalancer;
+
+    public RoutingOllamaApi(OllamaLoadBalancer loadBalancer) {
+        super(loadBalancer.endpoints().get(0).baseUrl());
+        this.loadBalancer = loadBalancer;
+    }
+
+    public OllamaLoadBalancer loadBalancer() {
+        return loadBalancer;
+    }
+
+    @Override
+    public void destroy() {
+        loadBalancer.destroy();
+    }
+
+    @Override
+    public GenerateResponse generate(GenerateRequest completionRequest) {
+        return loadBalancer.execute(completionRequest.model(), api -> api.generate(completionRequest));
+    }
+
+    @Override
+    public Flux<GenerateResponse> generateStreaming(GenerateRequest completionRequest) {
+        return loadBalancer.stream(completionRequest.model(), api -> api.generateStreaming(completionRequest));
+    }
+
+    @Override
+    public ChatResponse chat(ChatRequest chatRequest) {
+        return loadBalancer.execute(chatRequest.model(), api -> api.chat(chatRequest));
+    }
+
+    @Override
+    public Flux<ChatResponse> streamingChat(ChatRequest chatRequest) {
+        return loadBalancer.stream(chatRequest.model(), api -> api.streamingChat(chatRequest));
+    }
+
+    @Override
+    public EmbeddingResponse embeddings(EmbeddingRequest embeddingRequest) {
+        return loadBalancer.execute(embeddingRequest.model(), api -> api.embeddings(embeddingRequest));
+    }
+
+}
@@ -0,0 +1,93 @@
+package com.lizhe.dev.tech.test;
+
+import com.lizhe.trigger.ingest.TokenCounter;
+import com.lizhe.trigger.rag.ContextPacker;
+import com.lizhe.trigger.rag.ContextPackerProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.ai.document.Document;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 验证上下文装填的Token预算、重复片段丢弃、最大边际相关性排序和片段数上限
+ */
+@Slf4j
+public class ContextPackerTest {
+
+    private static final String LOCK = "Redis distributed lock uses SET NX with an expiry to guard the critical section";
+    /**
+     * 与LOCK的3-gram Jaccard系数约0.99，视为重复
+     */
+    private static final String LOCK_COPY = "Redis distributed lock uses SET NX with an expiry to guard the critical section.";
+    /**
+     * 与LOCK的3-gram Jaccard系数约0.47，部分重叠但不算重复
+     */
+    private static final String LOCK_RELEASE = "Redis distributed lock uses SET NX with an expiry; release it with a Lua script";
+    private static final String HNSW = "Pgvector HNSW indexes trade build time for recall at query time";
+
+    private final TokenCounter tokenCounter = new TokenCounter();
+    private ContextPackerProperties properties;
+    private ContextPacker packer;
+
+    @Before
+    public void setUp() {
+        properties = new ContextPackerProperties();
+        packer = new ContextPacker();
+        ReflectionTestUtils.setField(packer, "tokenCounter", tokenCounter);
+        ReflectionTestUtils.setField(packer, "properties", properties);
+    }
+
+    @Test
+    public void test_tokenBudget() {
+        String large = "Spring AI advisors wrap the chat client call. ".repeat(40);
+        int budget = tokenCounter.count(LOCK) + tokenCounter.count(HNSW) + 10;
+        properties.getModelTokenBudgets().put("deepseek-r1:1.5b", budget);
+
+        // 排名第二的大片段放不进剩余预算被跳过，之后较小的片段仍可装入
+        ContextPacker.PackedContext packed = packer.pack("deepseek-r1:1.5b", documents(LOCK, large, HNSW));
+        Assert.assertEquals(List.of(LOCK, HNSW), contents(packed));
+        Assert.assertEquals(budget, packed.budget());
+        Assert.assertTrue(packed.tokens() <= budget);
+        log.info("测试结果 {}/{}", packed.tokens(), packed.budget());
+    }
+
+    @Test
+    public void test_dropNearDuplicates() {
+        ContextPacker.PackedContext packed = packer.pack("deepseek-r1:1.5b", documents(LOCK, LOCK_COPY, HNSW));
+        Assert.assertEquals(List.of(LOCK, HNSW), contents(packed));
+    }
+
+    @Test
+    public void test_mmrPrefersDiverseCandidate() {
+        // 只看相关度时按检索顺序选取
+        properties.setMmrLambda(1.0);
+        Assert.assertEquals(List.of(LOCK, LOCK_RELEASE, HNSW),
+                contents(packer.pack("deepseek-r1:1.5b", documents(LOCK, LOCK_RELEASE, HNSW))));
+
+        // 兼顾多样性时，与已选片段部分重叠的候选让位于排名更低但内容不同的候选
+        properties.setMmrLambda(0.5);
+        Assert.assertEquals(List.of(LOCK, HNSW, LOCK_RELEASE),
+                contents(packer.pack("deepseek-r1:1.5b", documents(LOCK, LOCK_RELEASE, HNSW))));
+    }
+
+    @Test
+    public void test_maxChunks() {
+        properties.setMaxChunks(2);
+        ContextPacker.PackedContext packed = packer.pack("deepseek-r1:1.5b", documents(LOCK, HNSW, "Ollama keeps models resident for five minutes by default"));
+        Assert.assertEquals(List.of(LOCK, HNSW), contents(packed));
+    }
+
+    private static List<Document> documents(String... contents) {
+        return Arrays.stream(contents).map(Document::new).toList();
+    }
+
+    private static List<String> contents(ContextPacker.PackedContext packed) {
+        return packed.documents().stream().map(Document::getContent).toList();
+    }
+
+}
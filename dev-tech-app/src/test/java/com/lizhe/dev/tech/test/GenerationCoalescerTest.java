@@ -0,0 +1,133 @@
+package com.lizhe.dev.tech.test;
+
+import com.lizhe.trigger.generation.GenerationCoalescer;
+import com.lizhe.trigger.generation.GenerationCoalescingProperties;
+import com.lizhe.trigger.generation.GenerationRejectedException;
+import com.lizhe.trigger.generation.GenerationScheduler;
+import com.lizhe.trigger.generation.GenerationSchedulerProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 验证相同生成请求的合并：后加入者收到回放、上游只调用一次，结束、出错或准入被拒后键被移除
+ */
+@Slf4j
+public class GenerationCoalescerTest {
+
+    private GenerationScheduler scheduler;
+    private GenerationCoalescer coalescer;
+
+    @Before
+    public void setUp() {
+        scheduler = new GenerationScheduler();
+        ReflectionTestUtils.setField(scheduler, "properties", new GenerationSchedulerProperties());
+        coalescer = new GenerationCoalescer();
+        ReflectionTestUtils.setField(coalescer, "properties", new GenerationCoalescingProperties());
+        ReflectionTestUtils.setField(coalescer, "generationScheduler", scheduler);
+    }
+
+    @Test
+    public void test_lateJoinerReplay() {
+        AtomicInteger invocations = new AtomicInteger();
+        Sinks.Many<String> upstream = Sinks.many().unicast().onBackpressureBuffer();
+
+        List<String> first = new CopyOnWriteArrayList<>();
+        coalescer.stream("ollama", "deepseek-r1:1.5b", List.of("b", "a"), "What is  RAG?", () -> {
+            invocations.incrementAndGet();
+            return upstream.asFlux();
+        }).subscribe(first::add);
+        upstream.tryEmitNext("R");
+        upstream.tryEmitNext("A");
+
+        // 大小写、多余空白和标签顺序不同的相同问题合并到进行中的生成
+        List<String> second = new CopyOnWriteArrayList<>();
+        coalescer.stream("ollama", "deepseek-r1:1.5b", List.of("a", "b"), " what is rag? ", () -> {
+            invocations.incrementAndGet();
+            return Flux.just("unexpected");
+        }).subscribe(second::add);
+        Assert.assertEquals(List.of("R", "A"), second);
+
+        upstream.tryEmitNext("G");
+        upstream.tryEmitComplete();
+        Assert.assertEquals(List.of("R", "A", "G"), first);
+        Assert.assertEquals(List.of("R", "A", "G"), second);
+        Assert.assertEquals(1, invocations.get());
+        Assert.assertEquals(1, scheduler.stats().get(0).getCoalesced());
+
+        // 生成结束后键被移除，之后的相同请求重新生成
+        List<String> third = coalescer.stream("ollama", "deepseek-r1:1.5b", List.of("a", "b"), "what is rag?", () -> {
+            invocations.incrementAndGet();
+            return Flux.just("again");
+        }).collectList().block();
+        Assert.assertEquals(List.of("again"), third);
+        Assert.assertEquals(2, invocations.get());
+        log.info("测试结果 {} {}", first, second);
+    }
+
+    @Test
+    public void test_cleanupAfterUpstreamError() {
+        AtomicInteger invocations = new AtomicInteger();
+        Sinks.Many<String> upstream = Sinks.many().unicast().onBackpressureBuffer();
+        AtomicReference<Throwable> firstError = new AtomicReference<>();
+        AtomicReference<Throwable> secondError = new AtomicReference<>();
+
+        coalescer.stream("ollama", "deepseek-r1:1.5b", List.of(), "hi", () -> {
+            invocations.incrementAndGet();
+            return upstream.asFlux();
+        }).subscribe(item -> {}, firstError::set);
+        coalescer.stream("ollama", "deepseek-r1:1.5b", List.of(), "hi", () -> {
+            invocations.incrementAndGet();
+            return Flux.just("unexpected");
+        }).subscribe(item -> {}, secondError::set);
+
+        upstream.tryEmitError(new IllegalStateException("model crashed"));
+        Assert.assertEquals("model crashed", firstError.get().getMessage());
+        Assert.assertEquals("model crashed", secondError.get().getMessage());
+
+        // 出错的生成不会被之后的请求复用
+        Assert.assertEquals("recovered", coalescer.stream("ollama", "deepseek-r1:1.5b", List.of(), "hi", () -> {
+            invocations.incrementAndGet();
+            return Flux.just("recovered");
+        }).blockLast());
+        Assert.assertEquals(2, invocations.get());
+    }
+
+    @Test
+    public void test_cleanupAfterRejectedAdmission() {
+        AtomicInteger invocations = new AtomicInteger();
+
+        // 首个请求准入被拒绝时在当前线程上抛出，占位被移除
+        GenerationRejectedException e = Assert.assertThrows(GenerationRejectedException.class,
+                () -> coalescer.stream("ollama", "deepseek-r1:1.5b", List.of(), "hi", () -> {
+                    invocations.incrementAndGet();
+                    throw new GenerationRejectedException("模型繁忙，请稍后重试", 3);
+                }));
+        Assert.assertEquals(3, e.getRetryAfterSeconds());
+
+        Assert.assertEquals("ok", coalescer.stream("ollama", "deepseek-r1:1.5b", List.of(), "hi", () -> {
+            invocations.incrementAndGet();
+            return Flux.just("ok");
+        }).blockLast());
+        Assert.assertEquals(2, invocations.get());
+    }
+
+    @Test
+    public void test_callCleanupAfterError() {
+        Assert.assertThrows(IllegalStateException.class, () -> coalescer.call("ollama", "deepseek-r1:1.5b", "hi", () -> {
+            throw new IllegalStateException("model crashed");
+        }));
+
+        Assert.assertEquals("ok", coalescer.call("ollama", "deepseek-r1:1.5b", "hi", () -> "ok"));
+    }
+
+}
@@ -0,0 +1,214 @@
+package com.lizhe.dev.tech.test;
+
+import com.lizhe.dev.tech.api.dto.GenerationQueueDTO;
+import com.lizhe.trigger.generation.GenerationRejectedException;
+import com.lizhe.trigger.generation.GenerationScheduler;
+import com.lizhe.trigger.generation.GenerationSchedulerProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 验证生成调度的并发限制、按客户端轮转出队、队列满时的429和未使用名额的归还
+ */
+@Slf4j
+public class GenerationSchedulerTest {
+
+    private GenerationSchedulerProperties properties;
+    private GenerationScheduler scheduler;
+
+    @Before
+    public void setUp() {
+        properties = new GenerationSchedulerProperties();
+        properties.setMaxQueueSize(1);
+        properties.setMaxQueueWaitMillis(5000);
+        scheduler = new GenerationScheduler();
+        ReflectionTestUtils.setField(scheduler, "properties", properties);
+    }
+
+    @After
+    public void tearDown() {
+        RequestContextHolder.resetRequestAttributes();
+    }
+
+    @Test
+    public void test_laneConcurrencyLimit() {
+        properties.getMaxConcurrency().put("ollama/deepseek-r1:1.5b", 2);
+        properties.setMaxQueueSize(4);
+
+        AtomicInteger started = new AtomicInteger();
+        List<Sinks.One<String>> blockers = new CopyOnWriteArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            Sinks.One<String> blocker = Sinks.one();
+            blockers.add(blocker);
+            scheduler.admit("ollama", "deepseek-r1:1.5b")
+                    .run(() -> {
+                        started.incrementAndGet();
+                        return blocker.asMono().flux();
+                    })
+                    .subscribe();
+        }
+
+        // 前两个请求占满并发名额，第三个排队且尚未调用模型
+        Assert.assertEquals(2, started.get());
+        Assert.assertEquals(2, lane().getActive());
+        Assert.assertEquals(1, lane().getQueueDepth());
+
+        blockers.get(0).tryEmitValue("done");
+        Assert.assertEquals(3, started.get());
+        Assert.assertEquals(2, lane().getActive());
+        Assert.assertEquals(0, lane().getQueueDepth());
+
+        blockers.get(1).tryEmitValue("done");
+        blockers.get(2).tryEmitValue("done");
+        Assert.assertEquals(0, lane().getActive());
+        log.info("测试结果 {}", scheduler.stats());
+    }
+
+    @Test
+    public void test_roundRobinAcrossClients() {
+        properties.setMaxQueueSize(10);
+        List<String> order = new CopyOnWriteArrayList<>();
+
+        Sinks.One<String> blocker = Sinks.one();
+        admitAs("10.0.0.1").run(() -> blocker.asMono().flux()).subscribe();
+
+        // 客户端a突发三个请求后，客户端b的请求不必排在它们全部之后
+        for (String name : List.of("a1", "a2", "a3")) {
+            admitAs("10.0.0.1").run(() -> record(order, name)).subscribe();
+        }
+        admitAs("10.0.0.2").run(() -> record(order, "b1")).subscribe();
+
+        Assert.assertTrue(order.isEmpty());
+        Assert.assertEquals(4, lane().getQueueDepth());
+
+        blocker.tryEmitValue("done");
+        Assert.assertEquals(List.of("a1", "b1", "a2", "a3"), order);
+        Assert.assertEquals(0, lane().getActive());
+        Assert.assertEquals(0, lane().getQueueDepth());
+        log.info("测试结果 {}", order);
+    }
+
+    @Test
+    public void test_forwardedForNotTrusted() {
+        properties.setMaxQueueSize(10);
+        List<String> order = new CopyOnWriteArrayList<>();
+
+        Sinks.One<String> blocker = Sinks.one();
+        admitAs("10.0.0.1").run(() -> blocker.asMono().flux()).subscribe();
+
+        // 客户端a每次伪造不同的X-Forwarded-For，仍按来源地址归为同一客户端，不能插到客户端b前面
+        for (String name : List.of("a1", "a2", "a3")) {
+            MockHttpServletRequest request = new MockHttpServletRequest();
+            request.setRemoteAddr("10.0.0.1");
+            request.addHeader("X-Forwarded-For", "203.0.113." + name.charAt(1));
+            RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+            scheduler.admit("ollama", "deepseek-r1:1.5b").run(() -> record(order, name)).subscribe();
+        }
+        admitAs("10.0.0.2").run(() -> record(order, "b1")).subscribe();
+
+        blocker.tryEmitValue("done");
+        Assert.assertEquals(List.of("a1", "b1", "a2", "a3"), order);
+    }
+
+    @Test
+    public void test_rejectWithRetryAfter() {
+        scheduler.admit("ollama", "deepseek-r1:1.5b");
+        scheduler.admit("ollama", "deepseek-r1:1.5b");
+
+        // 并发名额1 + 队列1 已被占满
+        GenerationRejectedException e = Assert.assertThrows(GenerationRejectedException.class,
+                () -> scheduler.admit("ollama", "deepseek-r1:1.5b"));
+
+        // 尚无耗时统计，按初始单次耗时5秒 × (2个已占名额 + 本次) / 并发1 估算
+        Assert.assertEquals(15, e.getRetryAfterSeconds());
+        Assert.assertEquals(1, lane().getRejected());
+        log.info("测试结果 {}", e.getMessage());
+    }
+
+    @Test
+    public void test_retryAfterCapped() {
+        properties.setMaxRetryAfterSeconds(10);
+        scheduler.admit("ollama", "deepseek-r1:1.5b");
+        scheduler.admit("ollama", "deepseek-r1:1.5b");
+
+        GenerationRejectedException e = Assert.assertThrows(GenerationRejectedException.class,
+                () -> scheduler.admit("ollama", "deepseek-r1:1.5b"));
+        Assert.assertEquals(10, e.getRetryAfterSeconds());
+    }
+
+    @Test
+    public void test_guardReleasesUnusedReservation() {
+        GenerationScheduler.Ticket ticket = scheduler.admit("ollama", "deepseek-r1:1.5b");
+        Assert.assertEquals(1, lane().getQueueDepth());
+
+        // 命中缓存等未调用模型的情况，流结束时归还名额
+        Assert.assertEquals("cached", ticket.guard(Flux.just("cached")).blockLast());
+        Assert.assertEquals(0, lane().getQueueDepth());
+
+        // 归还后可以重新占满并发和队列名额
+        scheduler.admit("ollama", "deepseek-r1:1.5b");
+        scheduler.admit("ollama", "deepseek-r1:1.5b");
+        Assert.assertThrows(GenerationRejectedException.class, () -> scheduler.admit("ollama", "deepseek-r1:1.5b"));
+    }
+
+    @Test
+    public void test_guardAfterRunReleasesOnce() {
+        GenerationScheduler.Ticket ticket = scheduler.admit("ollama", "deepseek-r1:1.5b");
+        Assert.assertEquals("answer", ticket.guard(ticket.run(() -> Flux.just("answer"))).blockLast());
+
+        Assert.assertEquals(0, lane().getActive());
+        Assert.assertEquals(0, lane().getQueueDepth());
+        Assert.assertEquals(1, lane().getGranted());
+    }
+
+    @Test
+    public void test_laterRunChecksQueueCap() {
+        GenerationScheduler.Ticket ticket = scheduler.admit("ollama", "deepseek-r1:1.5b");
+        Sinks.One<String> blocker = Sinks.one();
+        ticket.run(() -> blocker.asMono().flux()).subscribe();
+        scheduler.admit("ollama", "deepseek-r1:1.5b");
+
+        // 同一凭证的第二次调用（如摘要压缩）重新占用名额，队列已满时被拒绝
+        Assert.assertThrows(GenerationRejectedException.class,
+                () -> ticket.run(() -> Flux.just("summary")).blockLast());
+        Assert.assertEquals(1, lane().getRejected());
+        Assert.assertEquals(1, lane().getActive());
+        Assert.assertEquals(1, lane().getQueueDepth());
+
+        blocker.tryEmitValue("done");
+        Assert.assertEquals(0, lane().getActive());
+    }
+
+    private GenerationScheduler.Ticket admitAs(String remoteAddr) {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setRemoteAddr(remoteAddr);
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+        return scheduler.admit("ollama", "deepseek-r1:1.5b");
+    }
+
+    private static Flux<String> record(List<String> order, String name) {
+        order.add(name);
+        return Flux.just(name);
+    }
+
+    private GenerationQueueDTO lane() {
+        return scheduler.stats().stream()
+                .filter(dto -> "ollama/deepseek-r1:1.5b".equals(dto.getLane()))
+                .findFirst()
+                .orElseThrow();
+    }
+
+}
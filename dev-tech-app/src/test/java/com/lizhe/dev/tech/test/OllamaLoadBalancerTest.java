@@ -0,0 +1,130 @@
+package com.lizhe.dev.tech.test;
+
+import com.lizhe.dev.tech.config.OllamaEndpoint;
+import com.lizhe.dev.tech.config.OllamaLoadBalancer;
+import com.lizhe.dev.tech.config.OllamaPoolProperties;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.ai.ollama.api.OllamaApi;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 以本地桩HTTP服务模拟多个Ollama节点，验证模型亲和、延迟感知路由和故障摘除
+ */
+@Slf4j
+public class OllamaLoadBalancerTest {
+
+    private final List<HttpServer> servers = new ArrayList<>();
+    private OllamaLoadBalancer loadBalancer;
+
+    @After
+    public void tearDown() {
+        if (loadBalancer != null) {
+            loadBalancer.destroy();
+        }
+        servers.forEach(server -> server.stop(0));
+    }
+
+    @Test
+    public void test_modelAffinity() throws Exception {
+        String loaded = stub("[{\"name\":\"deepseek-r1:1.5b\"}]", 0);
+        String empty = stub("[]", 0);
+        loadBalancer = new OllamaLoadBalancer(List.of(empty, loaded), properties());
+        awaitHealthCheck();
+
+        Assert.assertEquals(loaded, loadBalancer.choose("deepseek-r1:1.5b", Set.of()).baseUrl());
+        log.info("测试结果 {}", loadBalancer.stats());
+    }
+
+    @Test
+    public void test_latencyAware() throws Exception {
+        String slow = stub("[]", 300);
+        String fast = stub("[]", 0);
+        loadBalancer = new OllamaLoadBalancer(List.of(slow, fast), properties());
+        awaitHealthCheck();
+
+        // 初始得分相同，前两次请求分别落到两个节点，之后延迟低的节点得分更低
+        for (int i = 0; i < 2; i++) {
+            loadBalancer.execute("nomic-embed-text", api -> api.embeddings(new OllamaApi.EmbeddingRequest("nomic-embed-text", "hi", null)));
+        }
+        Assert.assertEquals(fast, loadBalancer.choose("nomic-embed-text", Set.of()).baseUrl());
+        log.info("测试结果 {}", loadBalancer.stats());
+    }
+
+    @Test
+    public void test_failoverAndEjection() throws Exception {
+        String healthy = stub("[]", 0);
+        HttpServer dead = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        String deadUrl = "http://127.0.0.1:" + dead.getAddress().getPort();
+        dead.stop(0);
+
+        OllamaPoolProperties properties = properties();
+        properties.setFailureThreshold(1);
+        loadBalancer = new OllamaLoadBalancer(List.of(deadUrl, healthy), properties);
+
+        // 连接失败的节点被换掉重试，请求仍然成功
+        OllamaApi.EmbeddingResponse response = loadBalancer.execute("nomic-embed-text",
+                api -> api.embeddings(new OllamaApi.EmbeddingRequest("nomic-embed-text", "hi", null)));
+        Assert.assertEquals(2, response.embedding().size());
+
+        awaitHealthCheck();
+        OllamaEndpoint deadEndpoint = loadBalancer.endpoints().get(0);
+        Assert.assertFalse(deadEndpoint.isHealthy());
+        Assert.assertEquals(healthy, loadBalancer.choose("nomic-embed-text", Set.of()).baseUrl());
+        log.info("测试结果 {}", loadBalancer.stats());
+    }
+
+    private OllamaPoolProperties properties() {
+        OllamaPoolProperties properties = new OllamaPoolProperties();
+        properties.setHealthCheckIntervalMillis(100);
+        properties.setHealthCheckTimeoutMillis(500);
+        return properties;
+    }
+
+    /**
+     * 等待至少一轮健康检查完成
+     */
+    private void awaitHealthCheck() throws InterruptedException {
+        Thread.sleep(properties().getHealthCheckIntervalMillis() * 3);
+    }
+
+    /**
+     * 启动一个桩节点：/api/ps 返回给定的已加载模型，/api/embeddings 延迟给定毫秒后返回固定向量
+     */
+    private String stub(String loadedModels, long embeddingDelayMillis) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/api/ps", exchange -> respond(exchange, "{\"models\":" + loadedModels + "}"));
+        server.createContext("/api/embeddings", exchange -> {
+            try {
+                Thread.sleep(embeddingDelayMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            respond(exchange, "{\"embedding\":[0.1,0.2]}");
+        });
+        server.start();
+        servers.add(server);
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    private static void respond(HttpExchange exchange, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream outputStream = exchange.getResponseBody()) {
+            outputStream.write(bytes);
+        }
+    }
+
+}
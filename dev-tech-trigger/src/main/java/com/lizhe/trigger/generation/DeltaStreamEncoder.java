@@ -0,0 +1,153 @@
+package com.lizhe.trigger.generation;
+
+import com.alibaba.fastjson.JSON;
+import jakarta.annotation.Resource;
+import org.springframework.ai.chat.ChatResponse;
+import org.springframework.ai.chat.Generation;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.BaseSubscriber;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import reactor.core.publisher.SignalType;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 精简流式输出
+ * <p>
+ * 将逐Token的 {@link ChatResponse} 转为只含增量文本的SSE事件：一帧内的文本按时间或字符数上限合并后发送，
+ * 每帧 {@code data: {"d":"..."}}，结束时发送 {@code event: done}、{@code data: {"f":"STOP"}}。
+ * 相比每个Token一个完整的 {@link ChatResponse} JSON，传输字节数和写出次数都大幅减少。
+ * </p>
+ *
+ * @author 李哲
+ * @since 1.0
+ */
+@Component
+public class DeltaStreamEncoder {
+
+    static final String DONE_EVENT = "done";
+
+    @Resource
+    private DeltaStreamProperties properties;
+
+    public Flux<ServerSentEvent<String>> encode(Flux<ChatResponse> stream) {
+        return Flux.create(sink -> stream.subscribe(new FrameSubscriber(sink)));
+    }
+
+    /**
+     * 累积增量文本并按帧发送；上游回调与定时刷新可能并发，帧缓冲由锁保护
+     */
+    private final class FrameSubscriber extends BaseSubscriber<ChatResponse> {
+
+        private final FluxSink<ServerSentEvent<String>> sink;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final StringBuilder frame = new StringBuilder();
+        private Disposable flushTask;
+        private String finishReason;
+
+        private FrameSubscriber(FluxSink<ServerSentEvent<String>> sink) {
+            this.sink = sink;
+            sink.onDispose(this);
+        }
+
+        @Override
+        protected void hookOnNext(ChatResponse response) {
+            Generation result = response.getResult();
+            if (result == null || result.getOutput() == null) {
+                return;
+            }
+            Object reason = result.getOutput().getProperties() == null ? null : result.getOutput().getProperties().get("finishReason");
+            if (reason == null && result.getMetadata() != null) {
+                reason = result.getMetadata().getFinishReason();
+            }
+            String content = result.getOutput().getContent();
+            lock.lock();
+            try {
+                if (reason != null) {
+                    finishReason = String.valueOf(reason);
+                }
+                if (content == null || content.isEmpty()) {
+                    return;
+                }
+                frame.append(content);
+                if (frame.length() >= properties.getFrameMaxChars()) {
+                    flushLocked();
+                } else if (flushTask == null) {
+                    flushTask = Schedulers.parallel().schedule(this::flush, properties.getFrameMillis(), TimeUnit.MILLISECONDS);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        protected void hookOnComplete() {
+            lock.lock();
+            try {
+                flushLocked();
+                sink.next(ServerSentEvent.<String>builder()
+                        .event(DONE_EVENT)
+                        .data(JSON.toJSONString(Map.of("f", finishReason == null ? "STOP" : finishReason)))
+                        .build());
+            } finally {
+                lock.unlock();
+            }
+            sink.complete();
+        }
+
+        @Override
+        protected void hookOnError(Throwable throwable) {
+            lock.lock();
+            try {
+                flushLocked();
+            } finally {
+                lock.unlock();
+            }
+            sink.error(throwable);
+        }
+
+        @Override
+        protected void hookFinally(SignalType type) {
+            lock.lock();
+            try {
+                cancelFlushTask();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void flush() {
+            lock.lock();
+            try {
+                flushTask = null;
+                flushLocked();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void flushLocked() {
+            cancelFlushTask();
+            if (frame.isEmpty()) {
+                return;
+            }
+            sink.next(ServerSentEvent.<String>builder().data(JSON.toJSONString(Map.of("d", frame.toString()))).build());
+            frame.setLength(0);
+        }
+
+        private void cancelFlushTask() {
+            if (flushTask != null) {
+                flushTask.dispose();
+                flushTask = null;
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,27 @@
+package com.lizhe.trigger.generation;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 精简流式输出配置
+ *
+ * @author 李哲
+ * @since 1.0
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "generation.delta", ignoreInvalidFields = true)
+public class DeltaStreamProperties {
+
+    /**
+     * 一帧最多累积的时间（单位：毫秒），从帧内首个字符开始计时，默认为30
+     */
+    private long frameMillis = 30;
+    /**
+     * 一帧累积到该字符数时立即发送，默认为64
+     */
+    private int frameMaxChars = 64;
+
+}
@@ -0,0 +1,162 @@
+package com.lizhe.trigger.generation;
+
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.text.Normalizer;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * 进行中的相同生成请求合并
+ * <p>
+ * 以 提供方 + 模型 + 知识库标签 + 归一化后的问题 为键，同一时刻只向模型发起一次生成：
+ * 流式请求共享同一个 {@link Flux}，后加入的订阅者先收到已生成内容的回放再继续接收后续内容；
+ * 同步请求等待首个请求的结果。全部订阅者断开时取消上游生成，生成结束后键被移除，之后的请求重新生成。
+ * </p>
+ * <p>
+ * 只有首个请求经过 {@link GenerationScheduler} 排队，合并进来的请求不占用生成名额。
+ * 首个请求先以占位登记，再在映射表之外调用上游完成排队准入，准入被拒绝时移除占位并直接抛出，不在映射表的锁内执行准入。
+ * </p>
+ *
+ * @author 李哲
+ * @since 1.0
+ */
+@Slf4j
+@Component
+public class GenerationCoalescer {
+
+    @Resource
+    private GenerationCoalescingProperties properties;
+    @Resource
+    private GenerationScheduler generationScheduler;
+
+    private final Map<String, SharedStream> streams = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<Object>> calls = new ConcurrentHashMap<>();
+
+    /**
+     * 合并流式生成
+     *
+     * @param provider 模型提供方
+     * @param model    模型名称
+     * @param ragTags  知识库标签，无知识库时为空
+     * @param message  用户问题
+     * @param upstream 发起生成，只在没有进行中的相同请求时在当前线程上调用
+     * @return 共享的响应流
+     */
+    @SuppressWarnings("unchecked")
+    public <T> Flux<T> stream(String provider, String model, Collection<String> ragTags, String message, Supplier<Flux<T>> upstream) {
+        if (!properties.isEnabled()) {
+            return upstream.get();
+        }
+        String key = key(provider, model, ragTags, message);
+        SharedStream mine = new SharedStream(key);
+        SharedStream existing = streams.putIfAbsent(key, mine);
+        if (existing != null) {
+            joined(provider, model, key);
+            return (Flux<T>) existing.flux;
+        }
+        Flux<T> source;
+        try {
+            source = upstream.get();
+        } catch (RuntimeException e) {
+            // 准入被拒绝等，占位期间合并进来的请求收到同样的错误
+            streams.remove(key, mine);
+            mine.source.completeExceptionally(e);
+            throw e;
+        }
+        mine.source.complete(source);
+        return (Flux<T>) mine.flux;
+    }
+
+    /**
+     * 合并同步生成
+     *
+     * @param provider 模型提供方
+     * @param model    模型名称
+     * @param message  用户问题
+     * @param upstream 发起生成，只在没有进行中的相同请求时在当前线程上调用
+     * @return 生成结果
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T call(String provider, String model, String message, Supplier<T> upstream) {
+        if (!properties.isEnabled()) {
+            return upstream.get();
+        }
+        String key = key(provider, model, List.of(), message);
+        CompletableFuture<Object> mine = new CompletableFuture<>();
+        CompletableFuture<Object> existing = calls.putIfAbsent(key, mine);
+        if (existing != null) {
+            joined(provider, model, key);
+            try {
+                return (T) existing.get(properties.getCallTimeoutSeconds(), TimeUnit.SECONDS);
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof RuntimeException runtimeException ? runtimeException : new CompletionException(e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CompletionException(e);
+            } catch (TimeoutException e) {
+                throw new CompletionException(e);
+            }
+        }
+        try {
+            T result = upstream.get();
+            mine.complete(result);
+            return result;
+        } catch (RuntimeException e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            calls.remove(key, mine);
+        }
+    }
+
+    /**
+     * 一个进行中的共享生成，登记时上游尚未创建，创建后通过 {@link #source} 交给共享流
+     */
+    private final class SharedStream {
+
+        private final CompletableFuture<Flux<?>> source = new CompletableFuture<>();
+        private final Flux<?> flux;
+
+        private SharedStream(String key) {
+            // 上游结束或全部订阅者断开后移除，之后的相同请求重新生成
+            this.flux = Mono.fromFuture(source)
+                    .flatMapMany(upstream -> upstream)
+                    .doFinally(signal -> streams.remove(key, this))
+                    .replay()
+                    .refCount(1);
+        }
+
+    }
+
+    private void joined(String provider, String model, String key) {
+        generationScheduler.recordCoalesced(provider, model);
+        log.debug("合并进行中的相同生成请求 {}", key);
+    }
+
+    /**
+     * 问题按NFKC归一化、合并空白并转小写，标签排序去重，避免大小写、全半角和多余空格导致的重复生成
+     */
+    private static String key(String provider, String model, Collection<String> ragTags, String message) {
+        String normalized = Normalizer.normalize(message == null ? "" : message, Normalizer.Form.NFKC)
+                .replaceAll("\\s+", " ")
+                .trim()
+                .toLowerCase(Locale.ROOT);
+        String tags = String.join(",", ragTags.stream().map(String::trim).distinct().sorted().toList());
+        return provider + "\u0000" + model + "\u0000" + tags + "\u0000" + normalized;
+    }
+
+}
@@ -0,0 +1,27 @@
+package com.lizhe.trigger.generation;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 相同生成请求合并配置
+ *
+ * @author 李哲
+ * @since 1.0
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "generation.coalescing", ignoreInvalidFields = true)
+public class GenerationCoalescingProperties {
+
+    /**
+     * 是否合并进行中的相同生成请求，默认为true
+     */
+    private boolean enabled = true;
+    /**
+     * 同步请求等待合并结果的最长时间（单位：秒），默认为300
+     */
+    private long callTimeoutSeconds = 300;
+
+}
@@ -0,0 +1,24 @@
+package com.lizhe.trigger.generation;
+
+import lombok.Getter;
+
+/**
+ * 模型排队已满时拒绝请求，对应HTTP 429
+ *
+ * @author 李哲
+ * @since 1.0
+ */
+@Getter
+public class GenerationRejectedException extends RuntimeException {
+
+    /**
+     * 建议客户端重试的等待时间（单位：秒）
+     */
+    private final long retryAfterSeconds;
+
+    public GenerationRejectedException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+}
@@ -0,0 +1,385 @@
+package com.lizhe.trigger.generation;
+
+import com.lizhe.dev.tech.api.dto.GenerationQueueDTO;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * 模型生成调度
+ * <p>
+ * 每个 提供方/模型 一条通道，限制同时进行的生成数，超出的请求进入有界队列，按客户端轮转出队，
+ * 单个客户端的突发请求不会挤占其他客户端。队列已满时在请求线程上直接抛出 {@link GenerationRejectedException}，
+ * 由控制器返回429和Retry-After，而不是让请求堆积在Ollama和Tomcat线程上。
+ * </p>
+ * <p>
+ * 使用方式：控制器先调用 {@link #admit(String, String)} 占用排队名额，再用 {@link Ticket#run(Supplier)} 包装模型调用，
+ * 并用 {@link Ticket#guard(Flux)} 包装最终返回的流，保证未实际调用模型（如命中问答缓存）时名额被归还。
+ * </p>
+ *
+ * @author 李哲
+ * @since 1.0
+ */
+@Slf4j
+@Component
+public class GenerationScheduler {
+
+    @Resource
+    private GenerationSchedulerProperties properties;
+
+    private final Map<String, Lane> lanes = new ConcurrentHashMap<>();
+
+    /**
+     * 占用一个排队名额，须在请求线程上调用
+     *
+     * @param provider 模型提供方，如ollama、openai
+     * @param model    模型名称
+     * @return 排队凭证
+     * @throws GenerationRejectedException 队列已满时抛出
+     */
+    public Ticket admit(String provider, String model) {
+        String client = clientKey();
+        if (!properties.isEnabled()) {
+            return new Ticket(null, client, false);
+        }
+        Lane lane = lanes.computeIfAbsent(provider + "/" + model, Lane::new);
+        lane.reserve();
+        return new Ticket(lane, client, true);
+    }
+
+    /**
+     * 记录一次被合并、未实际调用模型的请求
+     */
+    public void recordCoalesced(String provider, String model) {
+        lanes.computeIfAbsent(provider + "/" + model, Lane::new).coalesced.increment();
+    }
+
+    /**
+     * 各模型通道的并发数、排队深度和等待耗时
+     */
+    public List<GenerationQueueDTO> stats() {
+        return lanes.values().stream()
+                .map(Lane::toDTO)
+                .sorted(Comparator.comparing(GenerationQueueDTO::getLane))
+                .toList();
+    }
+
+    /**
+     * 轮转出队使用的客户端标识：请求来源地址
+     * <p>
+     * 不直接读取X-Forwarded-For，客户端可在每次请求中伪造不同的值以抢占新的轮转位置。
+     * 经反向代理部署时由Tomcat RemoteIpValve只对可信代理转发的请求解析原始地址，
+     * 见 server.forward-headers-strategy 与 server.tomcat.remoteip.internal-proxies
+     * </p>
+     */
+    private static String clientKey() {
+        if (!(RequestContextHolder.getRequestAttributes() instanceof ServletRequestAttributes attributes)) {
+            return "local";
+        }
+        return attributes.getRequest().getRemoteAddr();
+    }
+
+    /**
+     * 排队凭证
+     */
+    public final class Ticket {
+
+        private final Lane lane;
+        private final String client;
+        private final AtomicBoolean reserved;
+
+        private Ticket(Lane lane, String client, boolean reserved) {
+            this.lane = lane;
+            this.client = client;
+            this.reserved = new AtomicBoolean(reserved);
+        }
+
+        /**
+         * 订阅时排队，轮到后才订阅模型流；模型流结束、出错或被取消时释放并发名额。
+         * 同一凭证可多次调用（如会话回答后的摘要压缩），首次调用使用 {@link #admit(String, String)} 占用的名额，
+         * 之后的每次调用重新占用名额，队列已满时流以 {@link GenerationRejectedException} 结束
+         */
+        public <T> Flux<T> run(Supplier<Flux<T>> upstream) {
+            if (lane == null) {
+                return Flux.defer(upstream);
+            }
+            return Flux.defer(() -> {
+                if (!reserved.compareAndSet(true, false)) {
+                    lane.reserve();
+                }
+                Waiter waiter = new Waiter(lane, client);
+                return Mono.<Void>create(waiter::enqueue)
+                        .timeout(Duration.ofMillis(properties.getMaxQueueWaitMillis()))
+                        .onErrorMap(TimeoutException.class, e -> new GenerationRejectedException(
+                                "排队等待超时 " + lane.name, lane.retryAfterSeconds()))
+                        .thenMany(Flux.defer(upstream))
+                        .doFinally(signal -> waiter.finish());
+            });
+        }
+
+        /**
+         * 同步调用模型，排队期间阻塞当前线程
+         */
+        public <T> T call(Supplier<T> upstream) {
+            return guard(run(() -> Mono.fromSupplier(upstream).flux())).blockLast();
+        }
+
+        /**
+         * 包装最终返回给客户端的流，流结束时若名额仍未被 {@link #run(Supplier)} 使用则归还
+         */
+        public <T> Flux<T> guard(Flux<T> flux) {
+            if (lane == null) {
+                return flux;
+            }
+            return flux.doFinally(signal -> {
+                if (reserved.compareAndSet(true, false)) {
+                    lane.unreserve();
+                }
+            });
+        }
+
+    }
+
+    /**
+     * 单个 提供方/模型 的并发控制与公平队列
+     */
+    private final class Lane {
+
+        private final String name;
+        private final int maxConcurrency;
+        private final ReentrantLock lock = new ReentrantLock();
+        /**
+         * 客户端 -> 该客户端的等待队列，按插入顺序轮转
+         */
+        private final LinkedHashMap<String, ArrayDeque<Waiter>> queues = new LinkedHashMap<>();
+        private int active;
+        private int reserved;
+        private int queued;
+
+        private final LongAdder granted = new LongAdder();
+        private final LongAdder rejected = new LongAdder();
+        private final LongAdder coalesced = new LongAdder();
+        private final AtomicLong totalWaitNanos = new AtomicLong();
+        private final AtomicLong maxWaitNanos = new AtomicLong();
+        private final LongAdder completed = new LongAdder();
+        private final AtomicLong totalGenerationNanos = new AtomicLong();
+
+        private Lane(String name) {
+            this.name = name;
+            this.maxConcurrency = properties.maxConcurrency(name);
+        }
+
+        private void reserve() {
+            lock.lock();
+            try {
+                if (active + reserved + queued >= maxConcurrency + properties.getMaxQueueSize()) {
+                    rejected.increment();
+                    throw new GenerationRejectedException("模型繁忙，请稍后重试 " + name, retryAfterSeconds());
+                }
+                reserved++;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void unreserve() {
+            lock.lock();
+            try {
+                reserved--;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private boolean enqueue(Waiter waiter) {
+            lock.lock();
+            try {
+                reserved--;
+                if (active < maxConcurrency && queued == 0) {
+                    active++;
+                    waiter.granted = true;
+                    waiter.grantNanos = System.nanoTime();
+                    return true;
+                }
+                queues.computeIfAbsent(waiter.client, key -> new ArrayDeque<>()).add(waiter);
+                queued++;
+                return false;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * 取消排队，已获得名额时返回true
+         */
+        private boolean dequeue(Waiter waiter) {
+            lock.lock();
+            try {
+                if (waiter.granted) {
+                    return true;
+                }
+                ArrayDeque<Waiter> queue = queues.get(waiter.client);
+                if (queue != null && queue.remove(waiter)) {
+                    queued--;
+                    if (queue.isEmpty()) {
+                        queues.remove(waiter.client);
+                    }
+                }
+                return false;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void release(long generationNanos) {
+            completed.increment();
+            totalGenerationNanos.addAndGet(generationNanos);
+            Waiter next;
+            lock.lock();
+            try {
+                active--;
+                next = poll();
+                if (next != null) {
+                    active++;
+                    next.granted = true;
+                    next.grantNanos = System.nanoTime();
+                }
+            } finally {
+                lock.unlock();
+            }
+            if (next != null) {
+                next.grant();
+            }
+        }
+
+        /**
+         * 取队首客户端的下一个请求，该客户端仍有排队请求时移到队尾
+         */
+        private Waiter poll() {
+            Iterator<Map.Entry<String, ArrayDeque<Waiter>>> iterator = queues.entrySet().iterator();
+            if (!iterator.hasNext()) {
+                return null;
+            }
+            Map.Entry<String, ArrayDeque<Waiter>> entry = iterator.next();
+            iterator.remove();
+            Waiter waiter = entry.getValue().poll();
+            if (!entry.getValue().isEmpty()) {
+                queues.put(entry.getKey(), entry.getValue());
+            }
+            queued--;
+            return waiter;
+        }
+
+        private void recordWait(long waitNanos) {
+            granted.increment();
+            totalWaitNanos.addAndGet(waitNanos);
+            maxWaitNanos.accumulateAndGet(waitNanos, Math::max);
+        }
+
+        private long avgGenerationMillis() {
+            long count = completed.sum();
+            return count == 0 ? properties.getInitialGenerationMillis() : totalGenerationNanos.get() / count / 1_000_000;
+        }
+
+        /**
+         * 按平均生成耗时估算当前排队请求全部完成所需的时间
+         */
+        private long retryAfterSeconds() {
+            long depth = (long) reserved + queued + 1;
+            long millis = avgGenerationMillis() * depth / maxConcurrency;
+            return Math.max(1, Math.min(properties.getMaxRetryAfterSeconds(), (millis + 999) / 1000));
+        }
+
+        private GenerationQueueDTO toDTO() {
+            int activeNow;
+            int depth;
+            lock.lock();
+            try {
+                activeNow = active;
+                depth = reserved + queued;
+            } finally {
+                lock.unlock();
+            }
+            long grantedCount = granted.sum();
+            return GenerationQueueDTO.builder()
+                    .lane(name)
+                    .maxConcurrency(maxConcurrency)
+                    .maxQueueSize(properties.getMaxQueueSize())
+                    .active(activeNow)
+                    .queueDepth(depth)
+                    .granted(grantedCount)
+                    .rejected(rejected.sum())
+                    .coalesced(coalesced.sum())
+                    .avgWaitMillis(grantedCount == 0 ? 0 : (double) totalWaitNanos.get() / grantedCount / 1_000_000)
+                    .maxWaitMillis(maxWaitNanos.get() / 1_000_000)
+                    .avgGenerationMillis(completed.sum() == 0 ? 0 : avgGenerationMillis())
+                    .build();
+        }
+
+    }
+
+    /**
+     * 一次排队中的模型调用
+     */
+    private static final class Waiter {
+
+        private final Lane lane;
+        private final String client;
+        private final long enqueueNanos = System.nanoTime();
+        private final AtomicBoolean finished = new AtomicBoolean();
+        private volatile MonoSink<Void> sink;
+        private volatile long grantNanos;
+        /**
+         * 只在通道锁内读写
+         */
+        private boolean granted;
+
+        private Waiter(Lane lane, String client) {
+            this.lane = lane;
+            this.client = client;
+        }
+
+        private void enqueue(MonoSink<Void> sink) {
+            this.sink = sink;
+            if (lane.enqueue(this)) {
+                grant();
+            }
+        }
+
+        private void grant() {
+            lane.recordWait(grantNanos - enqueueNanos);
+            sink.success();
+        }
+
+        /**
+         * 流结束、出错或被取消时调用：仍在排队则移出队列，已获得名额则释放
+         */
+        private void finish() {
+            if (finished.compareAndSet(false, true) && lane.dequeue(this)) {
+                lane.release(System.nanoTime() - grantNanos);
+            }
+        }
+
+    }
+
+}
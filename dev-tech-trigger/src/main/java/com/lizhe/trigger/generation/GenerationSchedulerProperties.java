@@ -0,0 +1,54 @@
+package com.lizhe.trigger.generation;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 模型生成调度配置
+ *
+ * @author 李哲
+ * @since 1.0
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "generation.scheduler", ignoreInvalidFields = true)
+public class GenerationSchedulerProperties {
+
+    /**
+     * 是否启用生成调度，关闭时请求直接调用模型，默认为true
+     */
+    private boolean enabled = true;
+    /**
+     * 未单独配置的模型同时进行的生成数，默认为1
+     */
+    private int defaultMaxConcurrency = 1;
+    /**
+     * 按 提供方/模型 配置的并发生成数，如 "[ollama/deepseek-r1:1.5b]": 2、"[openai/gpt-4o-mini]": 8
+     */
+    private Map<String, Integer> maxConcurrency = new HashMap<>();
+    /**
+     * 每个模型可排队等待的请求数，超过后直接返回429，默认为32
+     */
+    private int maxQueueSize = 32;
+    /**
+     * 请求排队等待的最长时间（单位：毫秒），超时后请求失败，默认为60000
+     */
+    private long maxQueueWaitMillis = 60000;
+    /**
+     * 尚无生成耗时统计时用于估算Retry-After的单次生成耗时（单位：毫秒），默认为5000
+     */
+    private long initialGenerationMillis = 5000;
+    /**
+     * Retry-After的上限（单位：秒），默认为120
+     */
+    private long maxRetryAfterSeconds = 120;
+
+    public int maxConcurrency(String lane) {
+        return Math.max(1, maxConcurrency.getOrDefault(lane, defaultMaxConcurrency));
+    }
+
+}
@@ -0,0 +1,83 @@
+package com.lizhe.trigger.http;
+
+import com.lizhe.dev.tech.api.IChatSessionService;
+import com.lizhe.dev.tech.api.dto.ChatSessionDTO;
+import com.lizhe.dev.tech.api.response.Response;
+import com.lizhe.trigger.session.ChatSessionService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.annotation.Resource;
+import org.springframework.web.bind.annotation.*;
+
+/**
+ * ChatSessionController
+ * {@code @description} 服务端会话管理控制类
+ *
+ * @author 李哲
+ * @version 1.0
+ */
+@Tag(name = "会话接口", description = "服务端多轮对话会话管理接口")
+@RestController()
+@CrossOrigin("*")
+@RequestMapping("/api/v1/session/")
+public class ChatSessionController implements IChatSessionService {
+
+    @Resource
+    private ChatSessionService chatSessionService;
+
+    /**
+     * 创建会话接口
+     * <a href="http://localhost:8090/api/v1/session/create">测试链接</a>
+     */
+    @Operation(summary = "创建会话", description = "创建服务端会话，返回会话ID")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "成功创建会话"),
+            @ApiResponse(responseCode = "500", description = "服务器内部错误")
+    })
+    @Override
+    @RequestMapping(value = "create", method = RequestMethod.POST)
+    public Response<String> createSession() {
+        return Response.<String>builder().code("200").info("调用成功").data(chatSessionService.create()).build();
+    }
+
+    /**
+     * 查询会话状态接口
+     * <a href="http://localhost:8090/api/v1/session/query?sessionId=xxx">测试链接</a>
+     */
+    @Operation(summary = "查询会话状态", description = "查询会话的对话轮数、滚动摘要和历史Token数")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "成功获取会话状态"),
+            @ApiResponse(responseCode = "500", description = "服务器内部错误")
+    })
+    @Override
+    @RequestMapping(value = "query", method = RequestMethod.GET)
+    public Response<ChatSessionDTO> querySession(
+            @Parameter(description = "会话ID", required = true)
+            @RequestParam("sessionId") String sessionId) {
+        ChatSessionDTO session = chatSessionService.query(sessionId);
+        if (session == null) {
+            return Response.<ChatSessionDTO>builder().code("404").info("会话不存在或已过期").build();
+        }
+        return Response.<ChatSessionDTO>builder().code("200").info("调用成功").data(session).build();
+    }
+
+    /**
+     * 删除会话接口
+     */
+    @Operation(summary = "删除会话", description = "删除会话及其全部历史")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "删除成功"),
+            @ApiResponse(responseCode = "500", description = "服务器内部错误")
+    })
+    @Override
+    @RequestMapping(value = "delete", method = RequestMethod.DELETE)
+    public Response<Boolean> deleteSession(
+            @Parameter(description = "会话ID", required = true)
+            @RequestParam("sessionId") String sessionId) {
+        return Response.<Boolean>builder().code("200").info("调用成功").data(chatSessionService.delete(sessionId)).build();
+    }
+
+}
@@ -0,0 +1,47 @@
+package com.lizhe.trigger.http;
+
+import com.lizhe.dev.tech.api.IGenerationService;
+import com.lizhe.dev.tech.api.dto.GenerationQueueDTO;
+import com.lizhe.dev.tech.api.response.Response;
+import com.lizhe.trigger.generation.GenerationScheduler;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.annotation.Resource;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+/**
+ * GenerationController
+ * {@code @description} 模型生成调度控制类
+ *
+ * @author 李哲
+ * @version 1.0
+ */
+@Tag(name = "生成调度接口", description = "模型生成队列状态查询接口")
+@RestController()
+@CrossOrigin("*")
+@RequestMapping("/api/v1/generation/")
+public class GenerationController implements IGenerationService {
+
+    @Resource
+    private GenerationScheduler generationScheduler;
+
+    /**
+     * 查询生成队列状态接口
+     * <a href="http://localhost:8090/api/v1/generation/queue">测试链接</a>
+     */
+    @Operation(summary = "查询生成队列状态", description = "查询各模型的并发生成数、排队深度和等待耗时")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "成功获取队列状态"),
+            @ApiResponse(responseCode = "500", description = "服务器内部错误")
+    })
+    @Override
+    @RequestMapping(value = "queue", method = RequestMethod.GET)
+    public Response<List<GenerationQueueDTO>> queryGenerationQueue() {
+        return Response.<List<GenerationQueueDTO>>builder().code("200").info("调用成功").data(generationScheduler.stats()).build();
+    }
+
+}
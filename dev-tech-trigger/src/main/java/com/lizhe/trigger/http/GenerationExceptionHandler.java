@@ -0,0 +1,40 @@
+package com.lizhe.trigger.http;
+
+import com.alibaba.fastjson.JSON;
+import com.lizhe.dev.tech.api.response.Response;
+import com.lizhe.trigger.generation.GenerationRejectedException;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 模型排队已满时返回429
+ * <p>
+ * 流式接口的客户端以 text/event-stream 请求，直接写出响应体，避免按Accept协商时找不到可用的消息转换器
+ * </p>
+ *
+ * @author 李哲
+ * @since 1.0
+ */
+@Slf4j
+@RestControllerAdvice
+public class GenerationExceptionHandler {
+
+    @ExceptionHandler(GenerationRejectedException.class)
+    public void handleRejected(GenerationRejectedException e, HttpServletResponse response) throws IOException {
+        log.warn("{} Retry-After:{}s", e.getMessage(), e.getRetryAfterSeconds());
+        response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()));
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        response.getWriter().write(JSON.toJSONString(Response.<Void>builder().code("429").info(e.getMessage()).build()));
+    }
+
+}
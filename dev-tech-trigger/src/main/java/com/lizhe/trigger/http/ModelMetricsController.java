@@ -0,0 +1,53 @@
+package com.lizhe.trigger.http;
+
+import com.lizhe.dev.tech.api.IModelMetricsService;
+import com.lizhe.dev.tech.api.response.Response;
+import com.lizhe.trigger.metrics.ModelMetrics;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.annotation.Resource;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * ModelMetricsController
+ * {@code @description} 模型运行指标控制类
+ *
+ * @author 李哲
+ * @version 1.0
+ */
+@Tag(name = "模型指标接口", description = "向量化缓存、模型加载等运行指标查询接口")
+@RestController()
+@CrossOrigin("*")
+@RequestMapping("/api/v1/model/")
+public class ModelMetricsController implements IModelMetricsService {
+
+    /**
+     * 部分组件以接口类型注册为Bean（如包装后的嵌入模型客户端），查询时再按实例类型收集
+     */
+    @Resource
+    private ObjectProvider<ModelMetrics> modelMetrics;
+
+    /**
+     * 查询模型运行指标接口
+     * <a href="http://localhost:8090/api/v1/model/metrics">测试链接</a>
+     */
+    @Operation(summary = "查询模型运行指标", description = "查询向量化缓存命中率、模型加载次数与耗时等运行指标")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "成功获取运行指标"),
+            @ApiResponse(responseCode = "500", description = "服务器内部错误")
+    })
+    @Override
+    @RequestMapping(value = "metrics", method = RequestMethod.GET)
+    public Response<Map<String, Object>> queryModelMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        modelMetrics.orderedStream().forEach(source -> metrics.put(source.metricsName(), source.stats()));
+        return Response.<Map<String, Object>>builder().code("200").info("调用成功").data(metrics).build();
+    }
+
+}
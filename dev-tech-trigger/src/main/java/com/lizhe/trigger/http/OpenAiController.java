@@ -1,6 +1,12 @@
 package com.lizhe.trigger.http;
 
 import com.lizhe.dev.tech.api.IAiService;
+import com.lizhe.trigger.generation.DeltaStreamEncoder;
+import com.lizhe.trigger.generation.GenerationCoalescer;
+import com.lizhe.trigger.generation.GenerationScheduler;
+import com.lizhe.trigger.rag.RagChatService;
+import com.lizhe.trigger.rag.RetrievalTuning;
+import com.lizhe.trigger.session.ChatSessionService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
@@ -8,22 +14,15 @@ import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.annotation.Resource;
 import org.springframework.ai.chat.ChatResponse;
-import org.springframework.ai.chat.messages.Message;
-import org.springframework.ai.chat.messages.UserMessage;
 import org.springframework.ai.chat.prompt.Prompt;
-import org.springframework.ai.chat.prompt.SystemPromptTemplate;
-import org.springframework.ai.document.Document;
 import org.springframework.ai.openai.OpenAiChatClient;
 import org.springframework.ai.openai.OpenAiChatOptions;
-import org.springframework.ai.vectorstore.PgVectorStore;
-import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.*;
 import reactor.core.publisher.Flux;
 
-import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
-import java.util.stream.Collectors;
 
 /**
  * OpenAiController
@@ -42,7 +41,15 @@ public class OpenAiController implements IAiService {
     @Resource
     private OpenAiChatClient chatClient;
     @Resource
-    private PgVectorStore pgVectorStore;
+    private RagChatService ragChatService;
+    @Resource
+    private ChatSessionService chatSessionService;
+    @Resource
+    private GenerationScheduler generationScheduler;
+    @Resource
+    private GenerationCoalescer generationCoalescer;
+    @Resource
+    private DeltaStreamEncoder deltaStreamEncoder;
 
     /**
      * OpenAI对话生成接口
@@ -75,12 +82,12 @@ public class OpenAiController implements IAiService {
             @RequestParam(name = "model") String model,
             @Parameter(description = "用户消息内容", example = "你好，请介绍一下自己", required = true)
             @RequestParam(name = "message") String message) {
-        return chatClient.call(new Prompt(
+        return generationCoalescer.call("openai", model, message, () -> generationScheduler.admit("openai", model).call(() -> chatClient.call(new Prompt(
                 message,
                 OpenAiChatOptions.builder()
                         .withModel(model)
                         .build()
-        ));
+        ))));
     }
 
 
@@ -122,12 +129,15 @@ public class OpenAiController implements IAiService {
             @RequestParam(name = "model") String model,
             @Parameter(description = "用户消息内容", example = "请写一首关于春天的诗", required = true)
             @RequestParam(name = "message") String message) {
-        return chatClient.stream(new Prompt(
-                message,
-                OpenAiChatOptions.builder()
-                        .withModel(model)
-                        .build()
-        ));
+        return generationCoalescer.stream("openai", model, List.of(), message, () -> {
+            GenerationScheduler.Ticket ticket = generationScheduler.admit("openai", model);
+            return ticket.guard(ticket.run(() -> chatClient.stream(new Prompt(
+                    message,
+                    OpenAiChatOptions.builder()
+                            .withModel(model)
+                            .build()
+            ))));
+        });
     }
 
     /**
@@ -149,16 +159,16 @@ public class OpenAiController implements IAiService {
      * <a href="http://localhost:8090/api/v1/openai/generate_stream_rag?model=gpt-4o-mini&ragTag=spring-ai&message=什么是RAG">测试链接</a>
      * 
      * @param model 指定的OpenAI模型名称，如"gpt-4o-mini"、"gpt-3.5-turbo"、"gpt-4"等
-     * @param ragTag 知识库标签，用于过滤检索范围，对应向量数据库中的knowledge字段
+     * @param ragTags 知识库标签，用于过滤检索范围，对应向量数据库中的knowledge字段；多个标签并行检索后合并
      * @param message 用户输入的问题或消息内容
      * @return Flux&lt;ChatResponse&gt; 流式响应对象，包含AI生成的回复内容
      * 
      * @apiNote
      * <ul>
      *   <li>响应格式：Server-Sent Events (SSE) 流</li>
-     *   <li>检索文档数量：最多5个相关文档</li>
+     *   <li>检索文档数量：启用 rag.context 时按模型Token预算装填，最多6个片段；否则由 rag.hybrid.top-k 配置，默认4个相关文档</li>
      *   <li>回复语言：强制中文回复</li>
-     *   <li>向量搜索：基于语义相似度检索</li>
+     *   <li>检索方式：全文检索与语义相似度检索混合</li>
      *   <li>模型提供商：OpenAI</li>
      * </ul>
      * 
@@ -179,38 +189,115 @@ public class OpenAiController implements IAiService {
     public Flux<ChatResponse> generateStreamRag(
             @Parameter(description = "OpenAI模型名称", example = "gpt-4o-mini", required = true)
             @RequestParam(name = "model") String model,
-            @Parameter(description = "知识库标签，用于指定检索范围", example = "spring-ai", required = true)
-            @RequestParam(name = "ragTag") String ragTag,
+            @Parameter(description = "知识库标签，用于指定检索范围；多个标签重复传参或以逗号分隔", example = "spring-ai", required = true)
+            @RequestParam(name = "ragTag") List<String> ragTags,
             @Parameter(description = "用户问题或消息内容", example = "什么是RAG技术？", required = true)
-            @RequestParam(name = "message") String message) {
+            @RequestParam(name = "message") String message,
+            @Parameter(description = "HNSW查询候选列表大小ef_search，取值1~1000，不传使用配置值", example = "100")
+            @RequestParam(name = "efSearch", required = false) Integer efSearch,
+            @Parameter(description = "IVFFlat探测的聚类数probes，不传使用配置值", example = "20")
+            @RequestParam(name = "probes", required = false) Integer probes,
+            @Parameter(description = "压缩索引检索时的候选倍数，不传使用配置值", example = "10")
+            @RequestParam(name = "candidateMultiplier", required = false) Integer candidateMultiplier) {
 
-        String SYSTEM_PROMPT = """
-                Use the information from the DOCUMENTS section to provide accurate answers but act as if you knew this information innately.
-                If unsure, simply state that you don't know.
-                Another thing you need to note is that your reply must be in Chinese!
-                DOCUMENTS:
-                    {documents}
-                """;
-
-        // 指定文档搜索
-        SearchRequest request = SearchRequest.query(message)
-                .withTopK(5)
-                .withFilterExpression("knowledge == '" + ragTag + "'");
+        RetrievalTuning tuning = new RetrievalTuning(efSearch, probes, candidateMultiplier);
+        // 检索与提示词组装在检索调度器上异步执行，请求线程直接返回
+        return generationCoalescer.stream("openai", model, ragTags, message, () -> {
+            GenerationScheduler.Ticket ticket = generationScheduler.admit("openai", model);
+            return ticket.guard(ragChatService.generateStream("openai", model, ragTags, message, tuning, messages -> ticket.run(() -> chatClient.stream(new Prompt(
+                    messages,
+                    OpenAiChatOptions.builder()
+                            .withModel(model)
+                            .build()
+            )))));
+        });
+    }
 
-        List<Document> documents = pgVectorStore.similaritySearch(request);
-        String documentCollectors = documents.stream().map(Document::getContent).collect(Collectors.joining());
-        Message ragMessage = new SystemPromptTemplate(SYSTEM_PROMPT).createMessage(Map.of("documents", documentCollectors));
+    /**
+     * 精简流式生成接口
+     * <p>
+     * 与 generate_stream 相同的生成过程，每个事件只含增量文本并按时间或字符数合并发送，
+     * 事件格式：{@code data: {"d":"..."}}，结束时 {@code event: done}、{@code data: {"f":"STOP"}}。
+     * </p>
+     *
+     * <a href="http://localhost:8090/api/v1/openai/generate_stream_delta?model=gpt-4o-mini&message=hi">测试链接</a>
+     */
+    @Operation(summary = "精简流式生成", description = "只返回增量文本的SSE流，按时间或字符数合并发送")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "成功开始流式生成"),
+            @ApiResponse(responseCode = "429", description = "模型繁忙，按Retry-After重试"),
+            @ApiResponse(responseCode = "500", description = "服务器内部错误")
+    })
+    @Override
+    @RequestMapping(value = "generate_stream_delta", method = RequestMethod.GET, produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<String>> generateStreamDelta(
+            @Parameter(description = "模型名称", example = "gpt-4o-mini", required = true)
+            @RequestParam(name = "model") String model,
+            @Parameter(description = "用户消息内容", example = "请写一首关于春天的诗", required = true)
+            @RequestParam(name = "message") String message) {
+        return deltaStreamEncoder.encode(generateStream(model, message));
+    }
 
-        List<Message> messages = new ArrayList<>();
-        messages.add(new UserMessage(message));
-        messages.add(ragMessage);
+    /**
+     * 基于RAG的精简流式生成接口，事件格式同 generate_stream_delta
+     *
+     * <a href="http://localhost:8090/api/v1/openai/generate_stream_rag_delta?model=gpt-4o-mini&ragTag=spring-ai&message=什么是RAG">测试链接</a>
+     */
+    @Operation(summary = "基于RAG的精简流式生成", description = "结合知识库检索生成回复，只返回增量文本的SSE流")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "成功开始RAG流式生成"),
+            @ApiResponse(responseCode = "429", description = "模型繁忙，按Retry-After重试"),
+            @ApiResponse(responseCode = "500", description = "向量检索或模型调用失败")
+    })
+    @Override
+    @RequestMapping(value = "generate_stream_rag_delta", method = RequestMethod.GET, produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<String>> generateStreamRagDelta(
+            @Parameter(description = "模型名称", example = "gpt-4o-mini", required = true)
+            @RequestParam(name = "model") String model,
+            @Parameter(description = "知识库标签，用于指定检索范围；多个标签重复传参或以逗号分隔", example = "spring-ai", required = true)
+            @RequestParam(name = "ragTag") List<String> ragTags,
+            @Parameter(description = "用户问题或消息内容", example = "什么是RAG技术？", required = true)
+            @RequestParam(name = "message") String message,
+            @Parameter(description = "HNSW查询候选列表大小ef_search，取值1~1000，不传使用配置值", example = "100")
+            @RequestParam(name = "efSearch", required = false) Integer efSearch,
+            @Parameter(description = "IVFFlat探测的聚类数probes，不传使用配置值", example = "20")
+            @RequestParam(name = "probes", required = false) Integer probes,
+            @Parameter(description = "压缩索引检索时的候选倍数，不传使用配置值", example = "10")
+            @RequestParam(name = "candidateMultiplier", required = false) Integer candidateMultiplier) {
+        return deltaStreamEncoder.encode(generateStreamRag(model, ragTags, message, efSearch, probes, candidateMultiplier));
+    }
 
-        return chatClient.stream(new Prompt(
+    /**
+     * 基于服务端会话的多轮对话流式生成接口
+     * <p>
+     * 历史对话保存在Redis中，较早的对话被压缩为滚动摘要，每轮提示词大小有上界。
+     * 会话通过 /api/v1/session/create 创建。
+     * </p>
+     *
+     * <a href="http://localhost:8090/api/v1/openai/generate_stream_session?model=gpt-4o-mini&sessionId=xxx&message=你好">测试链接</a>
+     */
+    @Operation(summary = "基于会话的多轮对话流式生成", description = "历史对话保存在服务端，客户端只需提交会话ID和新问题")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "成功开始流式生成"),
+            @ApiResponse(responseCode = "400", description = "会话不存在或已过期"),
+            @ApiResponse(responseCode = "500", description = "服务器内部错误")
+    })
+    @Override
+    @RequestMapping(value = "generate_stream_session", method = RequestMethod.GET)
+    public Flux<ChatResponse> generateStreamSession(
+            @Parameter(description = "模型名称", example = "gpt-4o-mini", required = true)
+            @RequestParam(name = "model") String model,
+            @Parameter(description = "会话ID", required = true)
+            @RequestParam(name = "sessionId") String sessionId,
+            @Parameter(description = "用户消息内容", example = "你好", required = true)
+            @RequestParam(name = "message") String message) {
+        GenerationScheduler.Ticket ticket = generationScheduler.admit("openai", model);
+        return ticket.guard(chatSessionService.generateStream(sessionId, message, messages -> ticket.run(() -> chatClient.stream(new Prompt(
                 messages,
                 OpenAiChatOptions.builder()
                         .withModel(model)
                         .build()
-        ));
+        )))));
     }
 
-}
\ No newline at end of file
+}
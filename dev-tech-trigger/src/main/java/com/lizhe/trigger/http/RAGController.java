@@ -1,7 +1,15 @@
 package com.lizhe.trigger.http;
 
 import com.lizhe.dev.tech.api.IRAGService;
+import com.lizhe.dev.tech.api.dto.IngestionJobDTO;
+import com.lizhe.dev.tech.api.dto.VectorIndexDTO;
 import com.lizhe.dev.tech.api.response.Response;
+import com.lizhe.trigger.ingest.GitIngestionService;
+import com.lizhe.trigger.ingest.IngestionJob;
+import com.lizhe.trigger.ingest.IngestionJobEngine;
+import com.lizhe.trigger.rag.SemanticAnswerCache;
+import com.lizhe.trigger.rag.VectorIndexManager;
+import com.lizhe.trigger.rag.VectorStorageLayout;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
@@ -9,24 +17,17 @@ import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.annotation.Resource;
 import lombok.extern.slf4j.Slf4j;
-import org.jetbrains.annotations.NotNull;
 import org.apache.commons.io.FileUtils;
-import org.eclipse.jgit.api.Git;
-import org.eclipse.jgit.transport.UsernamePasswordCredentialsProvider;
+import org.apache.commons.lang3.StringUtils;
 import org.redisson.api.RList;
 import org.redisson.api.RedissonClient;
-import org.springframework.ai.document.Document;
-import org.springframework.ai.reader.tika.TikaDocumentReader;
-import org.springframework.ai.transformer.splitter.TokenTextSplitter;
-import org.springframework.ai.vectorstore.PgVectorStore;
 import org.springframework.core.io.PathResource;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
-import java.io.File;
 import java.io.IOException;
 import java.nio.file.*;
-import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -45,11 +46,17 @@ import java.util.List;
 public class RAGController implements IRAGService {
 
     @Resource
-    private TokenTextSplitter tokenTextSplitter;
+    private RedissonClient redissonClient;
     @Resource
-    private PgVectorStore pgVectorStore;
+    private IngestionJobEngine ingestionJobEngine;
     @Resource
-    private RedissonClient redissonClient;
+    private GitIngestionService gitIngestionService;
+    @Resource
+    private VectorIndexManager vectorIndexManager;
+    @Resource
+    private VectorStorageLayout vectorStorageLayout;
+    @Resource
+    private SemanticAnswerCache semanticAnswerCache;
 
 
     /**
@@ -86,24 +93,64 @@ public class RAGController implements IRAGService {
             @Parameter(description = "要上传的文件列表，支持PDF、Word、TXT等格式", required = true)
             @RequestParam("file") List<MultipartFile> files) {
         log.info("上传知识库开始 {}", ragTag);
-        for (MultipartFile file : files) {
-            // 使用Tika文档读取器解析上传的文件
-            TikaDocumentReader documentReader = new TikaDocumentReader(file.getResource());
-            processDocuments(documentReader, ragTag);
+        // 上传文件在请求结束后会被容器清理，先转存到任务私有的临时目录，再交由后台导入任务处理
+        Path workspace = null;
+        List<IngestionJob.IngestionFile> ingestionFiles = new ArrayList<>();
+        try {
+            workspace = Files.createTempDirectory("rag-upload-");
+            for (int i = 0; i < files.size(); i++) {
+                MultipartFile file = files.get(i);
+                String fileName = StringUtils.defaultIfBlank(file.getOriginalFilename(), "file-" + i);
+                Path target = workspace.resolve(i + "-" + Paths.get(fileName).getFileName());
+                file.transferTo(target);
+                ingestionFiles.add(new IngestionJob.IngestionFile(fileName, new PathResource(target), file.getSize()));
+            }
+        } catch (IOException e) {
+            log.error("上传知识库失败 {}", ragTag, e);
+            if (workspace != null) {
+                FileUtils.deleteQuietly(workspace.toFile());
+            }
+            return Response.<String>builder().code("500").info("文件保存失败: " + e.getMessage()).build();
         }
 
-        // 将标签添加到Redis中的知识库标签列表
-        addRagTagToRedis(ragTag);
+        IngestionJob job = ingestionJobEngine.submit(ragTag, ingestionFiles, workspace);
+        // 任务结束且有文件导入成功时，将标签添加到Redis中的知识库标签列表
+        job.getCompletion().thenAccept(finished -> {
+            if (finished.getCompletedFiles().get() > 0) {
+                addRagTagToRedis(ragTag);
+            }
+        });
 
-        log.info("上传知识库完成 {}", ragTag);
-        return Response.<String>builder().code("200").info("调用成功").build();
+        log.info("上传知识库任务已提交 {} jobId:{}", ragTag, job.getJobId());
+        return Response.<String>builder().code("200").info("调用成功").data(job.getJobId()).build();
+    }
+
+    /**
+     * 查询知识库导入任务状态接口
+     * <a href="http://localhost:8090/api/v1/rag/ingestion_job?jobId=xxx">测试链接</a>
+     */
+    @Operation(summary = "查询导入任务状态", description = "根据文件上传返回的任务ID查询后台导入进度")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "成功获取任务状态"),
+            @ApiResponse(responseCode = "404", description = "任务不存在或已过期")
+    })
+    @Override
+    @RequestMapping(value = "ingestion_job", method = RequestMethod.GET)
+    public Response<IngestionJobDTO> queryIngestionJob(
+            @Parameter(description = "导入任务ID", required = true)
+            @RequestParam("jobId") String jobId) {
+        IngestionJob job = ingestionJobEngine.getJob(jobId);
+        if (job == null) {
+            return Response.<IngestionJobDTO>builder().code("404").info("任务不存在或已过期").build();
+        }
+        return Response.<IngestionJobDTO>builder().code("200").info("调用成功").data(job.toDTO()).build();
     }
 
     /**
      * 分析Git仓库并导入知识库
      * <a href="http://localhost:8090/api/v1/rag/analyze_git_repository">测试链接</a>
      */
-    @Operation(summary = "分析Git仓库", description = "克隆指定的Git仓库，解析其中的文件并导入到RAG知识库")
+    @Operation(summary = "分析Git仓库", description = "克隆或增量拉取指定的Git仓库，解析变更的文件并导入到RAG知识库")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Git仓库分析成功"),
             @ApiResponse(responseCode = "400", description = "请求参数错误"),
@@ -111,168 +158,79 @@ public class RAGController implements IRAGService {
     })
     @Override
     @RequestMapping(value = "analyze_git_repository", method = RequestMethod.POST)
-    public Response<String> analyzeGitRepository(
+    public Response<IngestionJobDTO> analyzeGitRepository(
             @Parameter(description = "Git仓库URL地址", example = "https://github.com/user/repo.git", required = true)
             @RequestParam("repoUrl") String repoUrl,
             @Parameter(description = "Git用户名（用于认证）", example = "username", required = true)
             @RequestParam("userName") String userName,
             @Parameter(description = "Git访问令牌（用于认证）", example = "ghp_xxxxxxxxxxxx", required = true)
             @RequestParam("token") String token) throws Exception {
-
-        // 定义本地克隆路径
-        String localPath = "./git-cloned-repo";
-        // 从仓库URL中提取项目名称，用作知识库标签
-        String repoProjectName = extractProjectName(repoUrl);
-        log.info("克隆路径：{}", new File(localPath).getAbsolutePath());
-
-        // 删除已存在的本地目录，确保干净的克隆环境
-        FileUtils.deleteDirectory(new File(localPath));
-
-        // 添加重试机制，处理网络连接重置问题
-        Git git = null;
-        int maxRetries = 3;
-        int retryCount = 0;
-        boolean success = false;
-        Exception lastException = null;
-
-        while (!success && retryCount < maxRetries) {
-            try {
-                // 使用JGit克隆远程Git仓库到本地，设置超时时间
-                log.info("开始克隆仓库（尝试 {} / {}）: {}", retryCount + 1, maxRetries, repoUrl);
-                git = Git.cloneRepository()
-                        .setURI(repoUrl)
-                        .setDirectory(new File(localPath))
-                        .setCredentialsProvider(new UsernamePasswordCredentialsProvider(userName, token))
-                        .setTimeout(300) // 设置超时时间为300秒
-                        .call();
-                success = true;
-                log.info("仓库克隆成功: {}", repoUrl);
-            } catch (Exception e) {
-                lastException = e;
-                retryCount++;
-                log.warn("仓库克隆失败（尝试 {} / {}）: {} - {}", retryCount, maxRetries, repoUrl, e.getMessage());
-                if (retryCount < maxRetries) {
-                    try {
-                        // 等待一段时间后重试
-                        int waitTime = 2000 * retryCount; // 递增等待时间
-                        log.info("等待 {} 毫秒后重试...", waitTime);
-                        Thread.sleep(waitTime);
-                    } catch (InterruptedException ie) {
-                        Thread.currentThread().interrupt();
-                        throw new RuntimeException("克隆操作被中断", ie);
-                    }
-                }
-            }
-        }
-
-        // 如果所有重试都失败，抛出最后捕获的异常
-        if (!success) {
-            throw new RuntimeException("在 " + maxRetries + " 次尝试后仍无法克隆仓库: " + repoUrl, lastException);
-        }
-
-        // 使用Files.walkFileTree遍历克隆的仓库目录树，处理每个文件
-        Files.walkFileTree(Paths.get(localPath), new SimpleFileVisitor<>() {
-            @Override
-            @NotNull
-            public FileVisitResult visitFile(@NotNull Path file, @NotNull BasicFileAttributes attrs) {
-                // 跳过.git目录下的所有文件
-                if (file.toString().contains(".git")) {
-                    return FileVisitResult.CONTINUE;
-                }
-
-                // 只处理常见的文档文件类型
-                String fileName = file.getFileName().toString().toLowerCase();
-                if (!isDocumentFile(fileName)) {
-                    log.info("跳过非文档文件: {}", fileName);
-                    return FileVisitResult.CONTINUE;
-                }
-
-                // 检查文件大小，跳过空文件
-                if (attrs.size() == 0) {
-                    log.info("跳过空文件: {}", fileName);
-                    return FileVisitResult.CONTINUE;
-                }
-
-                log.info("{} 遍历解析路径，上传知识库:{}", repoProjectName, file.getFileName());
-                try {
-                    // 使用TikaDocumentReader读取文件内容，支持多种文件格式
-                    TikaDocumentReader reader = new TikaDocumentReader(new PathResource(file));
-                    processDocuments(reader, repoProjectName);
-                } catch (Exception e) {
-                    // 记录文件处理失败的错误，但继续处理其他文件
-                    log.error("遍历解析路径，上传知识库失败:{} - {}", file.getFileName(), e.getMessage());
-                }
-
-                // 继续遍历下一个文件
-                return FileVisitResult.CONTINUE;
-            }
-
-            @Override
-            @NotNull
-            public FileVisitResult visitFileFailed(@NotNull Path file, @NotNull IOException exc) {
-                // 记录无法访问的文件，但继续遍历
-                log.info("Failed to access file: {} - {}", file, exc.getMessage());
-                return FileVisitResult.CONTINUE;
-            }
-
-            @Override
-            @NotNull
-            public FileVisitResult preVisitDirectory(@NotNull Path dir, @NotNull BasicFileAttributes attrs) {
-                // 跳过.git目录
-                if (dir.getFileName().toString().equals(".git")) {
-                    return FileVisitResult.SKIP_SUBTREE;
-                }
-                return FileVisitResult.CONTINUE;
-            }
-        });
-
-        // 清理本地克隆的临时目录
-        try {
-            // 先尝试关闭所有可能的文件句柄
-            System.gc();
-            // 等待一段时间，让文件句柄有时间释放
-            Thread.sleep(1000);
-            
-            // 尝试删除目录
-            safeDeleteDirectory(localPath);
-        } catch (Exception e) {
-            log.warn("清理本地克隆目录时出现问题: {} - {}", localPath, e.getMessage());
-            // 即使清理失败，也继续后续操作
-        }
+        // 基于本地持久化镜像增量导入，仅处理上次导入以来变更的文件
+        IngestionJobDTO stats = gitIngestionService.ingest(repoUrl, userName, token);
 
         // 将项目名称添加到Redis中的知识库标签列表
-        addRagTagToRedis(repoProjectName);
-
-        // 关闭Git资源
-        git.close();
+        if (stats.getCompletedFiles() > 0) {
+            addRagTagToRedis(stats.getRagTag());
+        }
 
-        log.info("遍历解析路径，上传完成:{}", repoUrl);
+        log.info("遍历解析路径，上传完成:{} 文件:{} 片段:{} 耗时:{}ms", repoUrl, stats.getTotalFiles(), stats.getChunkCount(), stats.getElapsedMillis());
 
-        return Response.<String>builder().code("200").info("调用成功").build();
+        return Response.<IngestionJobDTO>builder().code("200").info("调用成功").data(stats).build();
     }
 
-
     /**
-     * 处理文档：读取、分割、添加元数据并存储到向量数据库
-     *
-     * @param documentReader 文档读取器
-     * @param ragTag         知识库标签
+     * 删除知识库标签接口
+     * <a href="http://localhost:8090/api/v1/rag/rag_tag?ragTag=xxx">测试链接</a>
      */
-    private void processDocuments(TikaDocumentReader documentReader, String ragTag) {
-        // 读取文档内容，将文件转换为Document对象列表
-        List<Document> documents = documentReader.get();
-
-        // 使用Token文本分割器将长文档切分成较小的文档片段，便于向量化和检索
-        List<Document> documentSplitterList = tokenTextSplitter.apply(documents);
-
-        // 为原始文档添加知识库标签元数据，用于后续的文档分类和检索
-        documents.forEach(doc -> doc.getMetadata().put("knowledge", ragTag));
+    @Operation(summary = "删除知识库标签", description = "删除标签下的全部向量数据、导入记录和问答缓存，并从标签列表中移除")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "删除成功"),
+            @ApiResponse(responseCode = "500", description = "服务器内部错误")
+    })
+    @Override
+    @RequestMapping(value = "rag_tag", method = RequestMethod.DELETE)
+    public Response<Boolean> deleteRagTag(
+            @Parameter(description = "知识库标签名称", example = "技术文档", required = true)
+            @RequestParam("ragTag") String ragTag) {
+        log.info("删除知识库开始 {}", ragTag);
+        vectorStorageLayout.dropTag(ragTag);
+        gitIngestionService.forgetIndexedCommit(ragTag);
+        semanticAnswerCache.invalidate(ragTag);
+        RList<String> elements = redissonClient.getList("ragTag");
+        elements.remove(ragTag);
+        log.info("删除知识库完成 {}", ragTag);
+        return Response.<Boolean>builder().code("200").info("调用成功").data(true).build();
+    }
 
-        // 为分割后的文档片段也添加相同的知识库标签元数据
-        documentSplitterList.forEach(doc -> doc.getMetadata().put("knowledge", ragTag));
+    /**
+     * 查询向量索引状态接口
+     * <a href="http://localhost:8090/api/v1/rag/vector_index">测试链接</a>
+     */
+    @Operation(summary = "查询向量索引状态", description = "获取向量索引的类型、定义及最近一次构建情况")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "成功获取索引状态"),
+            @ApiResponse(responseCode = "500", description = "服务器内部错误")
+    })
+    @Override
+    @RequestMapping(value = "vector_index", method = RequestMethod.GET)
+    public Response<VectorIndexDTO> queryVectorIndex() {
+        return Response.<VectorIndexDTO>builder().code("200").info("调用成功").data(vectorIndexManager.status()).build();
+    }
 
-        // 将分割后的文档片段存储到PostgreSQL向量数据库中，生成向量嵌入用于相似性搜索
-        pgVectorStore.accept(documentSplitterList);
+    /**
+     * 重建向量索引接口
+     * <a href="http://localhost:8090/api/v1/rag/vector_index/rebuild">测试链接</a>
+     */
+    @Operation(summary = "重建向量索引", description = "批量导入后在后台并发重建向量索引，构建期间检索和导入不受影响")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "重建已触发或正在进行中"),
+            @ApiResponse(responseCode = "500", description = "服务器内部错误")
+    })
+    @Override
+    @RequestMapping(value = "vector_index/rebuild", method = RequestMethod.POST)
+    public Response<VectorIndexDTO> rebuildVectorIndex() {
+        log.info("触发向量索引重建");
+        return Response.<VectorIndexDTO>builder().code("200").info("调用成功").data(vectorIndexManager.rebuild()).build();
     }
 
     /**
@@ -286,121 +244,4 @@ public class RAGController implements IRAGService {
             elements.add(ragTag);
         }
     }
-
-    private String extractProjectName(String repoUrl) {
-        String[] parts = repoUrl.split("/");
-        String projectNameWithGit = parts[parts.length - 1];
-        return projectNameWithGit.replace(".git", "");
-    }
-
-    /**
-     * 判断文件是否为支持的文档类型
-     *
-     * @param fileName 文件名
-     * @return 如果是支持的文档类型返回true，否则返回false
-     */
-    private boolean isDocumentFile(String fileName) {
-        return fileName.endsWith(".txt") ||
-                fileName.endsWith(".md") ||
-                fileName.endsWith(".pdf") ||
-                fileName.endsWith(".doc") ||
-                fileName.endsWith(".docx") ||
-                fileName.endsWith(".java") ||
-                fileName.endsWith(".py") ||
-                fileName.endsWith(".js") ||
-                fileName.endsWith(".html") ||
-                fileName.endsWith(".xml") ||
-                fileName.endsWith(".json");
-    }
-    
-    /**
-     * 安全地删除目录，处理常见的文件锁定和权限问题
-     * 
-     * @param directoryPath 要删除的目录路径
-     * @throws IOException 如果删除失败
-     */
-    private void safeDeleteDirectory(String directoryPath) throws IOException {
-        File directory = new File(directoryPath);
-        if (!directory.exists()) {
-            return; // 目录不存在，无需删除
-        }
-        
-        // 特殊处理 .git 目录
-        File gitDir = new File(directoryPath, ".git");
-        if (gitDir.exists()) {
-            // 尝试重命名 .git 目录，这在 Windows 上可能有助于解除文件锁定
-            File renamedGitDir = new File(directoryPath, "_git_renamed_temp");
-            boolean renamed = gitDir.renameTo(renamedGitDir);
-            if (renamed) {
-                log.info("已重命名 .git 目录以便于删除");
-                gitDir = renamedGitDir;
-            }
-            
-            // 尝试删除 .git 目录内的文件
-            try {
-                deleteGitDirectoryContents(gitDir);
-            } catch (IOException e) {
-                log.warn("无法完全删除 .git 目录内容: {}", e.getMessage());
-            }
-        }
-        
-        // 尝试多次删除整个目录
-        int maxAttempts = 3;
-        for (int attempt = 1; attempt <= maxAttempts; attempt++) {
-            try {
-                FileUtils.deleteDirectory(directory);
-                log.info("成功删除目录: {}", directoryPath);
-                return; // 删除成功，退出方法
-            } catch (IOException e) {
-                if (attempt == maxAttempts) {
-                    throw e; // 最后一次尝试仍然失败，抛出异常
-                }
-                
-                log.warn("删除目录失败，第 {} 次尝试: {} - {}", attempt, directoryPath, e.getMessage());
-                
-                // 等待一段时间再重试
-                try {
-                    Thread.sleep(1000L * attempt); // 逐渐增加等待时间
-                    System.gc(); // 尝试释放资源
-                } catch (InterruptedException ie) {
-                    Thread.currentThread().interrupt();
-                }
-            }
-        }
-    }
-    
-    /**
-     * 递归删除 .git 目录内容，特殊处理锁定的文件
-     * 
-     * @param directory .git 目录
-     * @throws IOException 如果删除失败
-     */
-    private void deleteGitDirectoryContents(File directory) throws IOException {
-        if (!directory.exists()) {
-            return;
-        }
-        
-        File[] files = directory.listFiles();
-        if (files == null) {
-            return;
-        }
-        
-        // 先删除文件，再删除目录
-        for (File file : files) {
-            if (file.isDirectory()) {
-                try {
-                    deleteGitDirectoryContents(file);
-                    file.delete(); // 尝试删除空目录
-                } catch (IOException e) {
-                    log.debug("无法删除目录: {} - {}", file.getPath(), e.getMessage());
-                }
-            } else {
-                // 对于文件，设置为可写并尝试删除
-                file.setWritable(true);
-                if (!file.delete()) {
-                    log.debug("无法删除文件: {}", file.getPath());
-                }
-            }
-        }
-    }
 }
@@ -0,0 +1,109 @@
+package com.lizhe.trigger.ingest;
+
+import com.lizhe.trigger.rag.VectorStorageLayout;
+import jakarta.annotation.Resource;
+import org.springframework.ai.document.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.PreparedStatement;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+/**
+ * 文档片段内容去重
+ * <p>
+ * 以 嵌入模型 + 知识库标签 + 文件路径 + 片段内容 的SHA-256作为片段的唯一键，并由其派生出确定性的向量库主键。
+ * 文件路径仅对带有 path 元数据的片段（Git仓库导入）生效，保证按路径删除向量时不会误删其他文件的相同片段。
+ * 相同片段重复导入时主键不变，向量化前按主键查询 vector_store 即可跳过已存在的片段，
+ * 新片段通过 upsert 写入，不会产生重复记录。
+ * </p>
+ *
+ * @author 李哲
+ * @since 1.0
+ */
+@Component
+public class ChunkDeduplicator {
+
+    public static final String METADATA_CONTENT_HASH = "content_hash";
+    public static final String METADATA_PATH = "path";
+
+    private static final String SELECT_EXISTING_SQL = "SELECT id::text FROM vector_store WHERE id = ANY (?)";
+    private static final String SELECT_EXISTING_PARTITIONED_SQL = "SELECT id::text FROM " + VectorStorageLayout.PARTITIONED_TABLE
+            + " WHERE knowledge = ? AND id = ANY (?)";
+
+    @Value("${spring.ai.rag.embed}")
+    private String embeddingModel;
+    @Resource
+    private JdbcTemplate jdbcTemplate;
+    @Resource
+    private VectorStorageLayout layout;
+
+    /**
+     * 为片段生成由内容哈希派生的确定性主键
+     *
+     * @param chunk  切分得到的文档片段
+     * @param ragTag 知识库标签
+     * @return 使用确定性主键的新文档片段，元数据中附带内容哈希
+     */
+    public Document identify(Document chunk, String ragTag) {
+        Object path = chunk.getMetadata().getOrDefault(METADATA_PATH, "");
+        byte[] digest = sha256(embeddingModel + '\u0000' + ragTag + '\u0000' + path + '\u0000' + chunk.getContent());
+        Map<String, Object> metadata = new HashMap<>(chunk.getMetadata());
+        metadata.put(METADATA_CONTENT_HASH, HexFormat.of().formatHex(digest));
+        return new Document(UUID.nameUUIDFromBytes(digest).toString(), chunk.getContent(), metadata);
+    }
+
+    /**
+     * 查询向量库中已存在的片段
+     *
+     * @param documents 待写入的文档片段
+     * @return 已存在片段的主键集合
+     */
+    public Set<String> findExisting(List<Document> documents) {
+        if (documents.isEmpty()) {
+            return Set.of();
+        }
+        if (layout.isPartitioned()) {
+            // 分区表主键为 (knowledge, id)，按标签查询才能裁剪到单个分区并使用主键索引
+            Set<String> existing = new HashSet<>();
+            documents.stream()
+                    .collect(Collectors.groupingBy(doc -> String.valueOf(doc.getMetadata().get("knowledge"))))
+                    .forEach((ragTag, tagDocuments) -> existing.addAll(queryExisting(SELECT_EXISTING_PARTITIONED_SQL, ragTag, tagDocuments)));
+            return existing;
+        }
+        return new HashSet<>(queryExisting(SELECT_EXISTING_SQL, null, documents));
+    }
+
+    private List<String> queryExisting(String sql, String ragTag, List<Document> documents) {
+        Object[] ids = documents.stream().map(doc -> UUID.fromString(doc.getId())).distinct().toArray();
+        return jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(sql);
+            int index = 1;
+            if (ragTag != null) {
+                ps.setString(index++, ragTag);
+            }
+            ps.setArray(index, con.createArrayOf("uuid", ids));
+            return ps;
+        }, (rs, rowNum) -> rs.getString(1));
+    }
+
+    private byte[] sha256(String text) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not supported", e);
+        }
+    }
+
+}
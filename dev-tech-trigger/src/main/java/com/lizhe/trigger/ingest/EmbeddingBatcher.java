@@ -0,0 +1,134 @@
+package com.lizhe.trigger.ingest;
+
+import org.springframework.ai.document.Document;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 跨文件向量化批处理器
+ * <p>
+ * 汇集来自多个文件的文档片段，当片段数、Token数或等待时间任一达到阈值时切出一个批次，
+ * 由下游以一次向量化请求和一次JDBC批量写入完成处理，避免大量小文件产生大量小请求。
+ * 单个批次内同一文件的片段以 {@link Entry} 记录归属，便于入库后回写各文件的完成进度。
+ * </p>
+ *
+ * @author 李哲
+ * @since 1.0
+ */
+class EmbeddingBatcher {
+
+    private final int maxChunks;
+    private final int maxTokens;
+    private final long maxDelayNanos;
+    /**
+     * 虚拟线程在ReentrantLock上等待时会让出载体线程
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private List<Entry> entries = new ArrayList<>();
+    private int pendingChunks;
+    private int pendingTokens;
+    private long firstChunkNanos;
+
+    EmbeddingBatcher(int maxChunks, int maxTokens, long maxDelayMillis) {
+        this.maxChunks = Math.max(1, maxChunks);
+        this.maxTokens = Math.max(1, maxTokens);
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+    }
+
+    /**
+     * 加入一个文件的文档片段
+     *
+     * @param file   片段所属文件的处理进度
+     * @param chunks 文档片段
+     * @param tokens 各片段的Token数，与chunks一一对应
+     * @return 因达到片段数或Token数阈值而切出的批次，可能为空列表
+     */
+    List<Batch> add(FileProgress file, List<Document> chunks, int[] tokens) {
+        lock.lock();
+        try {
+            List<Batch> ready = new ArrayList<>();
+            int from = 0;
+            for (int i = 0; i < chunks.size(); i++) {
+                if (pendingChunks == 0) {
+                    firstChunkNanos = System.nanoTime();
+                }
+                pendingChunks++;
+                pendingTokens += tokens[i];
+                if (pendingChunks >= maxChunks || pendingTokens >= maxTokens) {
+                    entries.add(new Entry(file, chunks.subList(from, i + 1)));
+                    from = i + 1;
+                    ready.add(cut());
+                }
+            }
+            if (from < chunks.size()) {
+                entries.add(new Entry(file, chunks.subList(from, chunks.size())));
+            }
+            return ready;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 等待时间达到阈值时切出批次
+     *
+     * @return 批次，未到期或无待处理片段时返回null
+     */
+    Batch pollExpired() {
+        lock.lock();
+        try {
+            if (pendingChunks == 0 || System.nanoTime() - firstChunkNanos < maxDelayNanos) {
+                return null;
+            }
+            return cut();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 立即切出当前所有待处理片段，用于任务结束和应用停止时
+     *
+     * @return 批次，无待处理片段时返回null
+     */
+    Batch flush() {
+        lock.lock();
+        try {
+            return pendingChunks == 0 ? null : cut();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Batch cut() {
+        Batch batch = new Batch(entries);
+        entries = new ArrayList<>();
+        pendingChunks = 0;
+        pendingTokens = 0;
+        return batch;
+    }
+
+    /**
+     * 一个向量化批次
+     */
+    record Batch(List<Entry> entries) {
+
+        List<Document> documents() {
+            List<Document> documents = new ArrayList<>();
+            entries.forEach(entry -> documents.addAll(entry.chunks()));
+            return documents;
+        }
+
+    }
+
+    /**
+     * 批次中属于同一文件的片段
+     */
+    record Entry(FileProgress file, List<Document> chunks) {
+    }
+
+}
@@ -0,0 +1,90 @@
+package com.lizhe.trigger.ingest;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 单个文件在向量化与入库阶段的处理进度
+ * <p>
+ * 文件的片段可能被拆分到多个批次，流式解析时片段数在解析结束前也无法确定。
+ * 因此片段产出时先登记，文件产出完毕后封口，封口后且全部已登记片段入库才算完成；
+ * 任一批次失败则文件失败且只上报一次；完成与失败由同一个状态字段互斥切换，文件只会计入其中一种结果。
+ * </p>
+ *
+ * @author 李哲
+ * @since 1.0
+ */
+class FileProgress {
+
+    private static final int RUNNING = 0;
+    private static final int COMPLETED = 1;
+    private static final int FAILED = 2;
+
+    private final IngestionJob job;
+    private final String fileName;
+    private final AtomicInteger totalChunks = new AtomicInteger();
+    private final AtomicInteger remainingChunks = new AtomicInteger();
+    /**
+     * RUNNING → COMPLETED 或 RUNNING → FAILED，只切换一次
+     */
+    private final AtomicInteger state = new AtomicInteger(RUNNING);
+    private volatile boolean sealed;
+
+    FileProgress(IngestionJob job, String fileName) {
+        this.job = job;
+        this.fileName = fileName;
+    }
+
+    IngestionJob job() {
+        return job;
+    }
+
+    String fileName() {
+        return fileName;
+    }
+
+    int totalChunks() {
+        return totalChunks.get();
+    }
+
+    /**
+     * 登记新产出的片段，须在片段交给批处理器之前调用
+     */
+    void emitted(int chunks) {
+        totalChunks.addAndGet(chunks);
+        remainingChunks.addAndGet(chunks);
+    }
+
+    /**
+     * 文件的片段已全部产出
+     *
+     * @return 文件是否因此完成
+     */
+    boolean seal() {
+        sealed = true;
+        return tryComplete();
+    }
+
+    /**
+     * 记录若干片段入库成功
+     *
+     * @return 文件是否因此完成
+     */
+    boolean stored(int chunks) {
+        remainingChunks.addAndGet(-chunks);
+        return tryComplete();
+    }
+
+    /**
+     * 记录文件失败
+     *
+     * @return 是否为首次失败且文件尚未完成，仅此时需要上报
+     */
+    boolean markFailed() {
+        return state.compareAndSet(RUNNING, FAILED);
+    }
+
+    private boolean tryComplete() {
+        return sealed && remainingChunks.get() == 0 && state.compareAndSet(RUNNING, COMPLETED);
+    }
+
+}
@@ -0,0 +1,50 @@
+package com.lizhe.trigger.ingest;
+
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.springframework.core.io.AbstractResource;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Git对象库中的文件内容
+ * <p>直接从对象库按需打开blob流，无需检出到工作区，解析阶段读取完毕即释放</p>
+ *
+ * @author 李哲
+ * @since 1.0
+ */
+public class GitBlobResource extends AbstractResource {
+
+    private final Repository repository;
+    private final ObjectId blobId;
+    private final String path;
+
+    public GitBlobResource(Repository repository, ObjectId blobId, String path) {
+        this.repository = repository;
+        this.blobId = blobId;
+        this.path = path;
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        return repository.open(blobId, Constants.OBJ_BLOB).openStream();
+    }
+
+    @Override
+    public String getFilename() {
+        return path.substring(path.lastIndexOf('/') + 1);
+    }
+
+    @Override
+    public long contentLength() throws IOException {
+        return repository.open(blobId, Constants.OBJ_BLOB).getSize();
+    }
+
+    @Override
+    public String getDescription() {
+        return "Git blob [" + path + "@" + blobId.name() + "]";
+    }
+
+}
@@ -0,0 +1,328 @@
+package com.lizhe.trigger.ingest;
+
+import com.lizhe.dev.tech.api.dto.IngestionJobDTO;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.FileUtils;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevTree;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.transport.CredentialsProvider;
+import org.eclipse.jgit.transport.RefSpec;
+import org.eclipse.jgit.transport.UsernamePasswordCredentialsProvider;
+import org.eclipse.jgit.treewalk.CanonicalTreeParser;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.redisson.api.RLock;
+import org.redisson.api.RMap;
+import org.redisson.api.RedissonClient;
+import org.springframework.stereotype.Service;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Git仓库增量导入服务
+ * <p>
+ * 每个仓库在本地保留一个持久化的裸仓库镜像，并在Redis中按知识库标签记录最近一次导入的提交。
+ * 每次导入只 fetch 远端HEAD，通过 {@link TreeWalk} 遍历提交树，将blob流直接交给解析阶段，
+ * 不检出工作区，也就没有写盘、读盘和删除目录的开销。
+ * 每个仓库使用独立的镜像目录。向量和导入记录按知识库标签（即项目名）存放，一个标签只能绑定一个仓库URL，
+ * 同名的不同仓库会被拒绝，避免互相覆盖导入记录或清除对方的向量。同一标签的导入通过Redis分布式锁串行，不同标签之间并行，
+ * 并发任务数、拉取数和向量化请求数由 {@link IngestionLimiter} 统一限制。
+ * 已有导入记录时通过 JGit diff 找出新增、修改和删除的文件，先删除修改和删除路径上的旧向量，再只导入新增和修改的文件。
+ * </p>
+ *
+ * @author 李哲
+ * @since 1.0
+ */
+@Slf4j
+@Service
+public class GitIngestionService {
+
+    private static final String INDEXED_COMMIT_KEY = "ragGitIndexedCommit";
+    /**
+     * 知识库标签 -> 绑定的仓库URL
+     */
+    private static final String REPOSITORY_KEY = "ragGitRepository";
+    private static final String INGEST_LOCK_PREFIX = "ragGitIngestLock:";
+    /**
+     * 镜像中保存远端HEAD的引用
+     */
+    private static final String MIRROR_HEAD_REF = "refs/heads/rag-mirror-head";
+
+    @Resource
+    private IngestionProperties properties;
+    @Resource
+    private IngestionJobEngine ingestionJobEngine;
+    @Resource
+    private PgVectorDocumentWriter documentWriter;
+    @Resource
+    private RedissonClient redissonClient;
+    @Resource
+    private IngestionLimiter ingestionLimiter;
+
+    /**
+     * 导入Git仓库，等待导入完成后返回
+     *
+     * @param repoUrl  Git仓库URL地址
+     * @param userName Git用户名
+     * @param token    Git访问令牌
+     * @return 导入任务统计
+     */
+    public IngestionJobDTO ingest(String repoUrl, String userName, String token) throws Exception {
+        String ragTag = extractProjectName(repoUrl);
+        String mirrorId = UUID.nameUUIDFromBytes(repoUrl.getBytes(StandardCharsets.UTF_8)).toString().substring(0, 8);
+        File mirror = new File(properties.getGitMirrorDir(), ragTag + "-" + mirrorId);
+        CredentialsProvider credentials = new UsernamePasswordCredentialsProvider(userName, token);
+
+        // 同一知识库标签同一时刻只允许一个导入在执行，不同标签互不影响
+        RLock lock = redissonClient.getLock(INGEST_LOCK_PREFIX + ragTag);
+        try (IngestionLimiter.Permit ignored = ingestionLimiter.acquireGitJob()) {
+            lock.lockInterruptibly();
+            try {
+                bindRepository(ragTag, repoUrl);
+                try (Git git = openMirror(mirror)) {
+                    return ingest(git, repoUrl, ragTag, credentials);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * 清除知识库标签已导入的提交记录，下次导入时全量导入
+     *
+     * @param ragTag 知识库标签
+     */
+    public void forgetIndexedCommit(String ragTag) {
+        RMap<String, String> indexedCommits = redissonClient.getMap(INDEXED_COMMIT_KEY);
+        indexedCommits.remove(ragTag);
+        RMap<String, String> repositories = redissonClient.getMap(REPOSITORY_KEY);
+        repositories.remove(ragTag);
+    }
+
+    /**
+     * 将知识库标签绑定到仓库URL，标签已被其他仓库使用时拒绝导入
+     */
+    private void bindRepository(String ragTag, String repoUrl) {
+        RMap<String, String> repositories = redissonClient.getMap(REPOSITORY_KEY);
+        String bound = repositories.putIfAbsent(ragTag, repoUrl);
+        if (bound != null && !bound.equals(repoUrl)) {
+            throw new IllegalArgumentException("知识库标签 " + ragTag + " 已被仓库 " + bound + " 使用，请先删除该标签再导入 " + repoUrl);
+        }
+    }
+
+    private IngestionJobDTO ingest(Git git, String repoUrl, String ragTag, CredentialsProvider credentials) throws Exception {
+        Repository repository = git.getRepository();
+        ObjectId head;
+        try (IngestionLimiter.Permit ignored = ingestionLimiter.acquireFetch()) {
+            head = fetchHead(git, repoUrl, credentials);
+        }
+
+        RMap<String, String> indexedCommits = redissonClient.getMap(INDEXED_COMMIT_KEY);
+        String lastCommit = indexedCommits.get(ragTag);
+        if (head.name().equals(lastCommit)) {
+            log.info("仓库无新提交，跳过导入 {} commit:{}", repoUrl, head.name());
+            return IngestionJobDTO.builder().ragTag(ragTag).status(IngestionJobStatus.SUCCESS.name()).errors(List.of()).build();
+        }
+
+        List<IngestionJob.IngestionFile> files;
+        ObjectId lastCommitId = lastCommit == null ? null : ObjectId.fromString(lastCommit);
+        if (lastCommitId != null && repository.getObjectDatabase().has(lastCommitId)) {
+            files = collectChangedFiles(git, ragTag, lastCommitId, head);
+        } else {
+            if (lastCommitId != null) {
+                // 记录的提交已不存在（如强制推送），清除该仓库的全部向量后全量导入
+                int deleted = documentWriter.deleteAllPaths(ragTag);
+                log.info("上次导入的提交 {} 已不存在，清除旧向量 {} 条后全量导入 {}", lastCommit, deleted, repoUrl);
+            }
+            files = collectAllFiles(repository, head);
+        }
+
+        // 解析阶段直接读取镜像中的blob，需等待任务结束后再关闭仓库
+        log.info("{} 待导入文件数:{} {} -> {}", ragTag, files.size(), lastCommit, head.name());
+        IngestionJob job = ingestionJobEngine.submit(ragTag, files, null);
+        IngestionJob finished = job.getCompletion().get();
+        // 全部文件成功后才推进导入位置，失败的文件在下次导入时重试
+        if (finished.getStatus() == IngestionJobStatus.SUCCESS) {
+            indexedCommits.put(ragTag, head.name());
+        }
+        return finished.toDTO();
+    }
+
+    public String extractProjectName(String repoUrl) {
+        String[] parts = repoUrl.split("/");
+        String projectNameWithGit = parts[parts.length - 1];
+        return projectNameWithGit.replace(".git", "");
+    }
+
+    /**
+     * 打开本地裸仓库镜像，不存在或已损坏时重新初始化
+     */
+    private Git openMirror(File mirror) throws Exception {
+        if (new File(mirror, "objects").isDirectory()) {
+            try {
+                return Git.open(mirror);
+            } catch (IOException e) {
+                log.warn("本地镜像不可用，重新初始化: {} - {}", mirror.getAbsolutePath(), e.getMessage());
+            }
+        }
+        // 镜像损坏或为旧版带工作区的镜像
+        FileUtils.deleteDirectory(mirror);
+        log.info("初始化镜像路径：{}", mirror.getAbsolutePath());
+        return Git.init().setBare(true).setDirectory(mirror).call();
+    }
+
+    /**
+     * 从远端拉取HEAD到镜像，只传输本地缺失的对象
+     *
+     * @return 远端HEAD指向的提交
+     */
+    private ObjectId fetchHead(Git git, String repoUrl, CredentialsProvider credentials) throws Exception {
+        // 添加重试机制，处理网络连接重置问题
+        int maxRetries = 3;
+        Exception lastException = null;
+        for (int retryCount = 0; retryCount < maxRetries; retryCount++) {
+            try {
+                log.info("开始拉取仓库（尝试 {} / {}）: {}", retryCount + 1, maxRetries, repoUrl);
+                git.fetch()
+                        .setRemote(repoUrl)
+                        .setRefSpecs(new RefSpec("+" + Constants.HEAD + ":" + MIRROR_HEAD_REF))
+                        .setCredentialsProvider(credentials)
+                        .setTimeout(300) // 设置超时时间为300秒
+                        .call();
+                ObjectId head = git.getRepository().resolve(MIRROR_HEAD_REF);
+                if (head == null) {
+                    throw new IllegalStateException("远端仓库没有HEAD: " + repoUrl);
+                }
+                log.info("仓库拉取成功: {} HEAD:{}", repoUrl, head.name());
+                return head;
+            } catch (Exception e) {
+                lastException = e;
+                log.warn("仓库拉取失败（尝试 {} / {}）: {} - {}", retryCount + 1, maxRetries, repoUrl, e.getMessage());
+                if (retryCount + 1 < maxRetries) {
+                    // 等待一段时间后重试，递增等待时间
+                    int waitTime = 2000 * (retryCount + 1);
+                    log.info("等待 {} 毫秒后重试...", waitTime);
+                    Thread.sleep(waitTime);
+                }
+            }
+        }
+        // 如果所有重试都失败，抛出最后捕获的异常
+        throw new RuntimeException("在 " + maxRetries + " 次尝试后仍无法拉取仓库: " + repoUrl, lastException);
+    }
+
+    /**
+     * 对比两次提交，删除修改和删除路径上的旧向量，返回需要重新导入的文件
+     */
+    private List<IngestionJob.IngestionFile> collectChangedFiles(Git git, String ragTag, ObjectId oldCommit, ObjectId newCommit) throws Exception {
+        Repository repository = git.getRepository();
+        List<DiffEntry> diffs;
+        try (ObjectReader reader = repository.newObjectReader(); RevWalk revWalk = new RevWalk(reader)) {
+            CanonicalTreeParser oldTree = new CanonicalTreeParser();
+            oldTree.reset(reader, revWalk.parseCommit(oldCommit).getTree());
+            CanonicalTreeParser newTree = new CanonicalTreeParser();
+            newTree.reset(reader, revWalk.parseCommit(newCommit).getTree());
+            diffs = git.diff().setOldTree(oldTree).setNewTree(newTree).call();
+        }
+
+        Set<String> stalePaths = new LinkedHashSet<>();
+        List<DiffEntry> changed = new ArrayList<>();
+        for (DiffEntry diff : diffs) {
+            if (diff.getChangeType() != DiffEntry.ChangeType.ADD) {
+                stalePaths.add(diff.getOldPath());
+            }
+            if (diff.getChangeType() != DiffEntry.ChangeType.DELETE) {
+                changed.add(diff);
+            }
+        }
+
+        int deleted = documentWriter.deleteByPaths(ragTag, stalePaths);
+        log.info("{} 增量导入 变更文件:{} 删除旧向量:{}", ragTag, diffs.size(), deleted);
+
+        List<IngestionJob.IngestionFile> files = new ArrayList<>();
+        try (ObjectReader reader = repository.newObjectReader()) {
+            for (DiffEntry diff : changed) {
+                if (diff.getNewMode().getObjectType() != Constants.OBJ_BLOB || diff.getNewMode() == FileMode.SYMLINK) {
+                    continue;
+                }
+                addIfDocument(files, repository, reader, diff.getNewPath(), diff.getNewId().toObjectId());
+            }
+        }
+        return files;
+    }
+
+    /**
+     * 遍历提交树，收集全部待导入的文件
+     */
+    private List<IngestionJob.IngestionFile> collectAllFiles(Repository repository, ObjectId commit) throws IOException {
+        List<IngestionJob.IngestionFile> files = new ArrayList<>();
+        try (ObjectReader reader = repository.newObjectReader();
+             RevWalk revWalk = new RevWalk(reader);
+             TreeWalk treeWalk = new TreeWalk(reader)) {
+            RevTree tree = revWalk.parseCommit(commit).getTree();
+            treeWalk.addTree(tree);
+            treeWalk.setRecursive(true);
+            while (treeWalk.next()) {
+                // 跳过子模块等非普通文件
+                if (treeWalk.getFileMode(0).getObjectType() != Constants.OBJ_BLOB || treeWalk.getFileMode(0) == FileMode.SYMLINK) {
+                    continue;
+                }
+                addIfDocument(files, repository, reader, treeWalk.getPathString(), treeWalk.getObjectId(0));
+            }
+        }
+        return files;
+    }
+
+    private void addIfDocument(List<IngestionJob.IngestionFile> files, Repository repository, ObjectReader reader, String path, ObjectId blobId) throws IOException {
+        GitBlobResource resource = new GitBlobResource(repository, blobId, path);
+        String fileName = resource.getFilename();
+        // 只处理常见的文档文件类型
+        if (!isDocumentFile(fileName.toLowerCase())) {
+            log.debug("跳过非文档文件: {}", path);
+            return;
+        }
+        // 检查文件大小，跳过空文件
+        long size = reader.getObjectSize(blobId, Constants.OBJ_BLOB);
+        if (size == 0) {
+            log.debug("跳过空文件: {}", path);
+            return;
+        }
+        files.add(new IngestionJob.IngestionFile(fileName, resource, size, Map.of(ChunkDeduplicator.METADATA_PATH, path)));
+    }
+
+    /**
+     * 判断文件是否为支持的文档类型
+     *
+     * @param fileName 文件名
+     * @return 如果是支持的文档类型返回true，否则返回false
+     */
+    private boolean isDocumentFile(String fileName) {
+        return fileName.endsWith(".txt") ||
+                fileName.endsWith(".md") ||
+                fileName.endsWith(".pdf") ||
+                fileName.endsWith(".doc") ||
+                fileName.endsWith(".docx") ||
+                fileName.endsWith(".java") ||
+                fileName.endsWith(".py") ||
+                fileName.endsWith(".js") ||
+                fileName.endsWith(".html") ||
+                fileName.endsWith(".xml") ||
+                fileName.endsWith(".json");
+    }
+
+}
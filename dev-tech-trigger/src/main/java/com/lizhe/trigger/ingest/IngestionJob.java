@@ -0,0 +1,198 @@
+package com.lizhe.trigger.ingest;
+
+import com.lizhe.dev.tech.api.dto.IngestionJobDTO;
+import lombok.AccessLevel;
+import lombok.Getter;
+import org.springframework.core.io.Resource;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 知识库导入任务
+ * <p>记录一次导入请求的文件清单和各文件在流水线中的处理进度，所有计数器均可被各阶段线程并发更新</p>
+ *
+ * @author 李哲
+ * @since 1.0
+ */
+@Getter
+public class IngestionJob {
+
+    private final String jobId;
+    private final String ragTag;
+    private final int totalFiles;
+    private final long totalBytes;
+    /**
+     * 任务私有的临时目录，任务结束后删除；为空表示无需清理
+     */
+    private final Path workspace;
+    private final Date createTime = new Date();
+    private final CompletableFuture<IngestionJob> completion = new CompletableFuture<>();
+    @Getter(AccessLevel.NONE)
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private volatile IngestionJobStatus status = IngestionJobStatus.PENDING;
+    private volatile long startNanos;
+    private volatile long finishNanos;
+    private volatile Date finishTime;
+
+    private final AtomicInteger completedFiles = new AtomicInteger();
+    private final AtomicInteger failedFiles = new AtomicInteger();
+    /**
+     * 已离开解析和切分阶段的文件数，用于判断任务的片段是否已全部交给批处理器
+     */
+    private final AtomicInteger settledFiles = new AtomicInteger();
+    private final AtomicLong chunkCount = new AtomicLong();
+    /**
+     * 向量库中已存在、跳过向量化的片段数
+     */
+    private final AtomicLong duplicateChunks = new AtomicLong();
+    /**
+     * 解析阶段累计耗时（单位：纳秒），多线程并行解析时为各文件耗时之和
+     */
+    private final AtomicLong parseNanos = new AtomicLong();
+    private final List<String> errors = new CopyOnWriteArrayList<>();
+
+    /**
+     * 待调度的文件，调度完成后释放
+     */
+    private List<IngestionFile> files;
+
+    public IngestionJob(String jobId, String ragTag, List<IngestionFile> files, Path workspace) {
+        this.jobId = jobId;
+        this.ragTag = ragTag;
+        this.files = new ArrayList<>(files);
+        this.totalFiles = files.size();
+        this.totalBytes = files.stream().mapToLong(IngestionFile::size).sum();
+        this.workspace = workspace;
+    }
+
+    /**
+     * 取出待调度的文件并将任务置为执行中
+     */
+    List<IngestionFile> drainFiles() {
+        lock.lock();
+        try {
+            List<IngestionFile> drained = files;
+            files = List.of();
+            status = IngestionJobStatus.RUNNING;
+            startNanos = System.nanoTime();
+            return drained;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 文件已完成切分并交给批处理器，或在此之前已失败
+     *
+     * @return 任务的全部文件是否均已离开切分阶段
+     */
+    boolean fileSettled() {
+        return settledFiles.incrementAndGet() == totalFiles;
+    }
+
+    /**
+     * 文件成功写入向量库
+     *
+     * @return 任务是否因此结束
+     */
+    boolean fileCompleted(int chunks) {
+        chunkCount.addAndGet(chunks);
+        completedFiles.incrementAndGet();
+        return tryFinish();
+    }
+
+    /**
+     * 文件在任一阶段处理失败
+     *
+     * @return 任务是否因此结束
+     */
+    boolean fileFailed(String fileName, Throwable cause) {
+        errors.add(fileName + ": " + cause.getMessage());
+        failedFiles.incrementAndGet();
+        return tryFinish();
+    }
+
+    boolean tryFinish() {
+        lock.lock();
+        try {
+            if (status.isFinished() || completedFiles.get() + failedFiles.get() < totalFiles) {
+                return false;
+            }
+            if (failedFiles.get() == 0) {
+                status = IngestionJobStatus.SUCCESS;
+            } else if (completedFiles.get() == 0) {
+                status = IngestionJobStatus.FAILED;
+            } else {
+                status = IngestionJobStatus.PARTIAL_SUCCESS;
+            }
+            finishNanos = System.nanoTime();
+            finishTime = new Date();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 任务执行耗时（单位：毫秒），未开始为0，执行中为截至当前的耗时
+     */
+    public long getElapsedMillis() {
+        if (startNanos == 0) {
+            return 0;
+        }
+        long end = finishNanos != 0 ? finishNanos : System.nanoTime();
+        return TimeUnit.NANOSECONDS.toMillis(end - startNanos);
+    }
+
+    public IngestionJobDTO toDTO() {
+        long elapsedMillis = getElapsedMillis();
+        double seconds = Math.max(elapsedMillis, 1) / 1000.0;
+        int processedFiles = completedFiles.get() + failedFiles.get();
+        return IngestionJobDTO.builder()
+                .jobId(jobId)
+                .ragTag(ragTag)
+                .status(status.name())
+                .totalFiles(totalFiles)
+                .completedFiles(completedFiles.get())
+                .failedFiles(failedFiles.get())
+                .chunkCount(chunkCount.get())
+                .duplicateChunks(duplicateChunks.get())
+                .parseMillis(TimeUnit.NANOSECONDS.toMillis(parseNanos.get()))
+                .totalBytes(totalBytes)
+                .elapsedMillis(elapsedMillis)
+                .filesPerSecond(processedFiles / seconds)
+                .chunksPerSecond(chunkCount.get() / seconds)
+                .errors(new ArrayList<>(errors))
+                .createTime(createTime)
+                .finishTime(finishTime)
+                .build();
+    }
+
+    /**
+     * 待导入的单个文件
+     *
+     * @param fileName 文件名，用于日志和错误信息
+     * @param resource 文件资源
+     * @param size     文件字节数，用于吞吐统计
+     * @param metadata 附加到该文件所有片段上的元数据
+     */
+    public record IngestionFile(String fileName, Resource resource, long size, Map<String, Object> metadata) {
+
+        public IngestionFile(String fileName, Resource resource, long size) {
+            this(fileName, resource, size, Map.of());
+        }
+
+    }
+
+}
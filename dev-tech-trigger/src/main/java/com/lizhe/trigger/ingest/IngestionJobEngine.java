@@ -0,0 +1,449 @@
+package com.lizhe.trigger.ingest;
+
+import com.lizhe.dev.tech.api.dto.IngestionJobDTO;
+import com.lizhe.trigger.ingest.reader.DocumentReaderRegistry;
+import com.lizhe.trigger.rag.SemanticAnswerCache;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.FileUtils;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingClient;
+import org.springframework.ai.transformer.splitter.TokenTextSplitter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
+import org.springframework.stereotype.Component;
+
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 知识库导入任务引擎
+ * <p>
+ * 将文档导入拆分为 解析 → 切分 → 向量化 → 入库 四个阶段，每个阶段由独立的线程组处理，
+ * 阶段之间通过有界队列衔接。CPU密集的文档解析与IO密集的向量化请求可以同时进行，
+ * 队列满时上游阶段阻塞，从而限制内存中堆积的文档数量。
+ * </p>
+ * <p>
+ * 切分与向量化之间由 {@link EmbeddingBatcher} 汇集多个文件的片段，按片段数、Token数或等待时间切出批次，
+ * 每个批次只发起一次向量化请求和一次批量写入。任务的全部文件切分完成时以及应用停止时会强制刷出剩余片段。
+ * </p>
+ * <p>
+ * 超过流式阈值的大文件由 {@link StreamingDocumentChunker} 边解析边切分，片段直接进入批处理器，
+ * 内存占用与文件大小无关。
+ * </p>
+ * <p>
+ * 开启 {@code spring.threads.virtual.enabled}（需JDK 21）时各阶段使用虚拟线程，阻塞在向量化请求、数据库写入和队列上时不占用平台线程；
+ * 各阶段线程数和 {@link IngestionLimiter} 的许可仍然限制着对Ollama和数据库的并发。
+ * </p>
+ *
+ * @author 李哲
+ * @since 1.0
+ */
+@Slf4j
+@Component
+public class IngestionJobEngine {
+
+    @Resource
+    private IngestionProperties properties;
+    @Resource
+    private TokenTextSplitter tokenTextSplitter;
+    @Resource
+    private TokenCounter tokenCounter;
+    @Resource(name = "ragEmbeddingClient")
+    private EmbeddingClient embeddingClient;
+    @Resource
+    private PgVectorDocumentWriter documentWriter;
+    @Resource
+    private ChunkDeduplicator chunkDeduplicator;
+    @Resource
+    private IngestionLimiter ingestionLimiter;
+    @Resource
+    private StreamingDocumentChunker streamingDocumentChunker;
+    @Resource
+    private DocumentReaderRegistry documentReaderRegistry;
+    @Resource
+    private SemanticAnswerCache semanticAnswerCache;
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreads;
+
+    private final Map<String, IngestionJob> jobs = new ConcurrentHashMap<>();
+    private final BlockingQueue<IngestionJob> dispatchQueue = new LinkedBlockingQueue<>();
+    private final List<Thread> workers = new ArrayList<>();
+
+    private BlockingQueue<FileTask> parseQueue;
+    private BlockingQueue<ChunkTask> splitQueue;
+    private BlockingQueue<EmbeddingBatcher.Batch> embedQueue;
+    private BlockingQueue<EmbeddingBatcher.Batch> storeQueue;
+
+    private EmbeddingBatcher batcher;
+
+    private volatile boolean running;
+
+    @PostConstruct
+    public void start() {
+        parseQueue = new ArrayBlockingQueue<>(properties.getQueueCapacity());
+        splitQueue = new ArrayBlockingQueue<>(properties.getQueueCapacity());
+        embedQueue = new ArrayBlockingQueue<>(properties.getQueueCapacity());
+        storeQueue = new ArrayBlockingQueue<>(properties.getQueueCapacity());
+        batcher = new EmbeddingBatcher(properties.getBatchMaxChunks(), properties.getBatchMaxTokens(), properties.getBatchMaxDelayMillis());
+        running = true;
+
+        startStage("dispatch", 1, dispatchQueue, this::dispatch);
+        startStage("parse", properties.getParseThreads(), parseQueue, this::parse);
+        startStage("split", properties.getSplitThreads(), splitQueue, this::split);
+        startStage("embed", properties.getEmbedThreads(), embedQueue, this::embed);
+        startStage("store", properties.getStoreThreads(), storeQueue, this::store);
+        startBatchTimer();
+        log.info("知识库导入任务引擎启动 virtualThreads:{} parse:{} split:{} embed:{} store:{} queue:{} inflightEmbeddings:{} batch:{}片段/{}Token/{}ms",
+                virtualThreads, properties.getParseThreads(), properties.getSplitThreads(), properties.getEmbedThreads(), properties.getStoreThreads(),
+                properties.getQueueCapacity(), properties.getMaxInflightEmbeddings(), properties.getBatchMaxChunks(),
+                properties.getBatchMaxTokens(), properties.getBatchMaxDelayMillis());
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        workers.forEach(Thread::interrupt);
+        for (Thread worker : workers) {
+            worker.join(TimeUnit.SECONDS.toMillis(5));
+        }
+
+        // 停止前将已切分但尚未入库的片段同步刷出，避免丢失
+        List<EmbeddingBatcher.Batch> pending = new ArrayList<>();
+        storeQueue.drainTo(pending);
+        pending.forEach(this::store);
+        pending.clear();
+        embedQueue.drainTo(pending);
+        EmbeddingBatcher.Batch remaining = batcher.flush();
+        if (remaining != null) {
+            pending.add(remaining);
+        }
+        for (EmbeddingBatcher.Batch batch : pending) {
+            if (embedBatch(batch)) {
+                store(batch);
+            }
+        }
+        log.info("知识库导入任务引擎停止，刷出批次数：{}，未完成任务数：{}", pending.size(),
+                jobs.values().stream().filter(job -> !job.getStatus().isFinished()).count());
+    }
+
+    /**
+     * 提交导入任务，立即返回，文件在后台流水线中处理
+     *
+     * @param ragTag    知识库标签
+     * @param files     待导入文件
+     * @param workspace 任务私有的临时目录，任务结束后删除；可为空
+     * @return 导入任务
+     */
+    public IngestionJob submit(String ragTag, List<IngestionJob.IngestionFile> files, Path workspace) {
+        evictExpiredJobs();
+        IngestionJob job = new IngestionJob(UUID.randomUUID().toString(), ragTag, files, workspace);
+        jobs.put(job.getJobId(), job);
+        if (files.isEmpty()) {
+            job.drainFiles();
+            job.tryFinish();
+            finish(job);
+            return job;
+        }
+        dispatchQueue.add(job);
+        log.info("导入任务已提交 jobId:{} ragTag:{} 文件数:{}", job.getJobId(), ragTag, files.size());
+        return job;
+    }
+
+    /**
+     * 查询导入任务
+     *
+     * @param jobId 任务ID
+     * @return 导入任务，不存在或已过期时返回null
+     */
+    public IngestionJob getJob(String jobId) {
+        return jobs.get(jobId);
+    }
+
+    private void dispatch(IngestionJob job) throws InterruptedException {
+        for (IngestionJob.IngestionFile file : job.drainFiles()) {
+            // 解析队列满时在此阻塞，形成对提交方的背压
+            parseQueue.put(new FileTask(job, file));
+        }
+    }
+
+    private void parse(FileTask task) throws InterruptedException {
+        if (task.file().size() >= properties.getStreamingThresholdBytes()) {
+            parseStreaming(task);
+            return;
+        }
+        List<Document> documents;
+        long start = System.nanoTime();
+        try {
+            // 按文件类型选择读取器，纯文本文件直接解码，二进制格式使用Tika解析
+            documents = documentReaderRegistry.read(task.file().resource(), task.file().fileName());
+            documents.forEach(doc -> doc.getMetadata().putAll(task.file().metadata()));
+        } catch (Exception e) {
+            fail(task.job(), task.file().fileName(), e);
+            settle(task.job());
+            return;
+        } finally {
+            task.job().getParseNanos().addAndGet(System.nanoTime() - start);
+        }
+        splitQueue.put(new ChunkTask(task.job(), task.file().fileName(), documents));
+    }
+
+    /**
+     * 大文件流式解析，边解析边切分，片段直接交给批处理器，不经过切分阶段
+     */
+    private void parseStreaming(FileTask task) throws InterruptedException {
+        IngestionJob job = task.job();
+        String ragTag = job.getRagTag();
+        Map<String, Object> metadata = new HashMap<>(task.file().metadata());
+        metadata.put("source", task.file().fileName());
+        metadata.put("knowledge", ragTag);
+
+        FileProgress progress = new FileProgress(job, task.file().fileName());
+        long start = System.nanoTime();
+        try (InputStream inputStream = task.file().resource().getInputStream()) {
+            streamingDocumentChunker.chunk(inputStream, task.file().fileName(), text -> {
+                Document chunk = chunkDeduplicator.identify(new Document(text, new HashMap<>(metadata)), ragTag);
+                progress.emitted(1);
+                // 批处理器或向量化队列满时在此阻塞，解析随之暂停
+                for (EmbeddingBatcher.Batch batch : batcher.add(progress, List.of(chunk), new int[]{tokenCounter.count(text)})) {
+                    embedQueue.put(batch);
+                }
+            });
+        } catch (InterruptedException e) {
+            throw e;
+        } catch (Exception e) {
+            if (progress.markFailed()) {
+                fail(job, task.file().fileName(), e);
+            }
+            settle(job);
+            return;
+        } finally {
+            // 流式解析包含切分和等待批处理器的时间
+            job.getParseNanos().addAndGet(System.nanoTime() - start);
+        }
+        if (progress.seal()) {
+            complete(job, progress.totalChunks());
+        }
+        settle(job);
+    }
+
+    private void split(ChunkTask task) throws InterruptedException {
+        List<Document> chunks;
+        int[] tokens;
+        try {
+            // 使用Token文本分割器将长文档切分成较小的文档片段，并添加知识库标签元数据；
+            // 片段主键由内容哈希派生，相同片段重复导入时主键不变
+            String ragTag = task.job().getRagTag();
+            chunks = tokenTextSplitter.apply(task.documents()).stream()
+                    .map(doc -> {
+                        doc.getMetadata().put("knowledge", ragTag);
+                        return chunkDeduplicator.identify(doc, ragTag);
+                    })
+                    .toList();
+            tokens = chunks.stream().mapToInt(doc -> tokenCounter.count(doc.getContent())).toArray();
+        } catch (Exception e) {
+            fail(task.job(), task.fileName(), e);
+            settle(task.job());
+            return;
+        }
+        FileProgress progress = new FileProgress(task.job(), task.fileName());
+        progress.emitted(chunks.size());
+        for (EmbeddingBatcher.Batch batch : batcher.add(progress, chunks, tokens)) {
+            embedQueue.put(batch);
+        }
+        if (progress.seal()) {
+            complete(task.job(), progress.totalChunks());
+        }
+        settle(task.job());
+    }
+
+    /**
+     * 文件离开切分阶段，任务的全部文件都已离开时立即刷出批处理器，不再等待时间阈值
+     */
+    private void settle(IngestionJob job) throws InterruptedException {
+        if (job.fileSettled()) {
+            EmbeddingBatcher.Batch batch = batcher.flush();
+            if (batch != null) {
+                embedQueue.put(batch);
+            }
+        }
+    }
+
+    private void embed(EmbeddingBatcher.Batch batch) throws InterruptedException {
+        if (embedBatch(batch)) {
+            storeQueue.put(batch);
+        }
+    }
+
+    /**
+     * 对批次内向量库中尚不存在的片段发起一次向量化请求，已存在的片段保持无向量状态并在入库时跳过
+     *
+     * @return 是否成功，失败时批次涉及的文件均已标记失败
+     */
+    private boolean embedBatch(EmbeddingBatcher.Batch batch) {
+        List<Document> pending;
+        try {
+            Set<String> known = new HashSet<>(chunkDeduplicator.findExisting(batch.documents()));
+            pending = batch.documents().stream().filter(doc -> known.add(doc.getId())).toList();
+        } catch (Exception e) {
+            failBatch(batch, e);
+            return false;
+        }
+        if (pending.isEmpty()) {
+            return true;
+        }
+
+        // 限制本节点及集群内同时进行中的向量化请求数量
+        try (IngestionLimiter.Permit ignored = ingestionLimiter.acquireEmbedding()) {
+            List<String> contents = pending.stream().map(Document::getContent).toList();
+            List<List<Double>> embeddings = embeddingClient.embed(contents);
+            for (int i = 0; i < embeddings.size(); i++) {
+                pending.get(i).setEmbedding(embeddings.get(i));
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failBatch(batch, e);
+            return false;
+        } catch (Exception e) {
+            failBatch(batch, e);
+            return false;
+        }
+    }
+
+    private void store(EmbeddingBatcher.Batch batch) {
+        try {
+            documentWriter.write(batch.documents().stream().filter(doc -> !doc.getEmbedding().isEmpty()).toList());
+        } catch (Exception e) {
+            failBatch(batch, e);
+            return;
+        }
+        for (EmbeddingBatcher.Entry entry : batch.entries()) {
+            FileProgress file = entry.file();
+            file.job().getDuplicateChunks().addAndGet(entry.chunks().stream().filter(doc -> doc.getEmbedding().isEmpty()).count());
+            if (file.stored(entry.chunks().size())) {
+                complete(file.job(), file.totalChunks());
+            }
+        }
+    }
+
+    private void failBatch(EmbeddingBatcher.Batch batch, Exception e) {
+        for (EmbeddingBatcher.Entry entry : batch.entries()) {
+            FileProgress file = entry.file();
+            if (file.markFailed()) {
+                fail(file.job(), file.fileName(), e);
+            }
+        }
+    }
+
+    private void complete(IngestionJob job, int chunks) {
+        if (job.fileCompleted(chunks)) {
+            finish(job);
+        }
+    }
+
+    private void fail(IngestionJob job, String fileName, Exception e) {
+        log.error("导入任务文件处理失败 jobId:{} file:{}", job.getJobId(), fileName, e);
+        if (job.fileFailed(fileName, e)) {
+            finish(job);
+        }
+    }
+
+    private void finish(IngestionJob job) {
+        if (job.getWorkspace() != null) {
+            FileUtils.deleteQuietly(job.getWorkspace().toFile());
+        }
+        // 导入与增量删除都会改变知识库内容，任务结束时使该标签的问答缓存失效
+        semanticAnswerCache.invalidate(job.getRagTag());
+        IngestionJobDTO stats = job.toDTO();
+        log.info("导入任务结束 jobId:{} ragTag:{} 状态:{} 成功:{} 失败:{} 片段:{} 重复片段:{} 字节:{} 耗时:{}ms 解析耗时:{}ms 吞吐:{}文件/秒 {}片段/秒 读取器:{}",
+                stats.getJobId(), stats.getRagTag(), stats.getStatus(), stats.getCompletedFiles(), stats.getFailedFiles(),
+                stats.getChunkCount(), stats.getDuplicateChunks(), stats.getTotalBytes(), stats.getElapsedMillis(), stats.getParseMillis(),
+                String.format("%.2f", stats.getFilesPerSecond()), String.format("%.2f", stats.getChunksPerSecond()),
+                documentReaderRegistry.snapshot());
+        job.getCompletion().complete(job);
+    }
+
+    private void evictExpiredJobs() {
+        long expireBefore = System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(properties.getJobRetentionMinutes());
+        jobs.values().removeIf(job -> job.getFinishTime() != null && job.getFinishTime().getTime() < expireBefore);
+    }
+
+    /**
+     * 定时检查批处理器，片段等待时间达到阈值时切出批次
+     */
+    private void startBatchTimer() {
+        long interval = Math.max(10, properties.getBatchMaxDelayMillis() / 4);
+        Thread timer = newThread("rag-ingest-batch-timer", () -> {
+            while (running) {
+                try {
+                    Thread.sleep(interval);
+                    EmbeddingBatcher.Batch batch = batcher.pollExpired();
+                    if (batch != null) {
+                        embedQueue.put(batch);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        });
+        timer.start();
+        workers.add(timer);
+    }
+
+    private <T> void startStage(String name, int threads, BlockingQueue<T> queue, StageHandler<T> handler) {
+        for (int i = 0; i < Math.max(1, threads); i++) {
+            Thread worker = newThread("rag-ingest-" + name + "-" + i, () -> {
+                while (running) {
+                    try {
+                        handler.handle(queue.take());
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    } catch (Exception e) {
+                        log.error("导入任务引擎 {} 阶段异常", name, e);
+                    }
+                }
+            });
+            worker.start();
+            workers.add(worker);
+        }
+    }
+
+    /**
+     * 创建未启动的守护线程，开启虚拟线程时创建虚拟线程
+     */
+    private Thread newThread(String name, Runnable task) {
+        Thread thread = virtualThreads ? new VirtualThreadTaskExecutor(name).newThread(task) : new Thread(task);
+        thread.setName(name);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    @FunctionalInterface
+    private interface StageHandler<T> {
+        void handle(T task) throws InterruptedException;
+    }
+
+    private record FileTask(IngestionJob job, IngestionJob.IngestionFile file) {
+    }
+
+    private record ChunkTask(IngestionJob job, String fileName, List<Document> documents) {
+    }
+
+}
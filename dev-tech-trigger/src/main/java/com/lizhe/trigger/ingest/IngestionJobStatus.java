@@ -0,0 +1,36 @@
+package com.lizhe.trigger.ingest;
+
+/**
+ * 知识库导入任务状态
+ *
+ * @author 李哲
+ * @since 1.0
+ */
+public enum IngestionJobStatus {
+
+    /**
+     * 已提交，等待调度
+     */
+    PENDING,
+    /**
+     * 执行中
+     */
+    RUNNING,
+    /**
+     * 全部文件导入成功
+     */
+    SUCCESS,
+    /**
+     * 部分文件导入失败
+     */
+    PARTIAL_SUCCESS,
+    /**
+     * 全部文件导入失败
+     */
+    FAILED;
+
+    public boolean isFinished() {
+        return this == SUCCESS || this == PARTIAL_SUCCESS || this == FAILED;
+    }
+
+}
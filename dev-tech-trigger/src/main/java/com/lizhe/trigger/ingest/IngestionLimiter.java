@@ -0,0 +1,118 @@
+package com.lizhe.trigger.ingest;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RPermitExpirableSemaphore;
+import org.redisson.api.RedissonClient;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 导入资源限流器
+ * <p>
+ * 统一管理所有导入任务共享的稀缺资源：Git导入任务数、仓库拉取数和向量化请求数。
+ * 每类资源先占用本节点的信号量，再按需占用集群级的Redis信号量，多个团队同时导入仓库时
+ * 既能用满单节点的硬件，又不会压垮共享的Git服务和嵌入模型服务。
+ * 集群许可带租期，节点异常退出后到期自动归还。
+ * </p>
+ *
+ * @author 李哲
+ * @since 1.0
+ */
+@Slf4j
+@Component
+public class IngestionLimiter {
+
+    @Resource
+    private IngestionProperties properties;
+    @Resource
+    private RedissonClient redissonClient;
+
+    private Semaphore nodeGitJobs;
+    private Semaphore nodeFetches;
+    private Semaphore nodeEmbeddings;
+    private RPermitExpirableSemaphore clusterFetches;
+    private RPermitExpirableSemaphore clusterEmbeddings;
+
+    @PostConstruct
+    public void init() {
+        nodeGitJobs = new Semaphore(Math.max(1, properties.getNodeMaxGitJobs()), true);
+        nodeFetches = new Semaphore(Math.max(1, properties.getNodeMaxFetches()), true);
+        nodeEmbeddings = new Semaphore(Math.max(1, properties.getMaxInflightEmbeddings()), true);
+        clusterFetches = clusterSemaphore("ragIngestFetchPermits", properties.getClusterMaxFetches());
+        clusterEmbeddings = clusterSemaphore("ragIngestEmbeddingPermits", properties.getClusterMaxInflightEmbeddings());
+        log.info("导入资源限流器初始化 gitJobs:{} fetches:{}/{} embeddings:{}/{}", properties.getNodeMaxGitJobs(),
+                properties.getNodeMaxFetches(), properties.getClusterMaxFetches(),
+                properties.getMaxInflightEmbeddings(), properties.getClusterMaxInflightEmbeddings());
+    }
+
+    /**
+     * 占用一个Git仓库导入任务名额
+     */
+    public Permit acquireGitJob() throws InterruptedException {
+        return acquire(nodeGitJobs, null);
+    }
+
+    /**
+     * 占用一个仓库拉取名额
+     */
+    public Permit acquireFetch() throws InterruptedException {
+        return acquire(nodeFetches, clusterFetches);
+    }
+
+    /**
+     * 占用一个向量化请求名额
+     */
+    public Permit acquireEmbedding() throws InterruptedException {
+        return acquire(nodeEmbeddings, clusterEmbeddings);
+    }
+
+    private Permit acquire(Semaphore node, RPermitExpirableSemaphore cluster) throws InterruptedException {
+        node.acquire();
+        if (cluster == null) {
+            return node::release;
+        }
+        String permitId;
+        try {
+            permitId = cluster.acquire(properties.getClusterPermitLeaseSeconds(), TimeUnit.SECONDS);
+        } catch (InterruptedException | RuntimeException e) {
+            node.release();
+            throw e;
+        }
+        return () -> {
+            try {
+                cluster.release(permitId);
+            } catch (RuntimeException e) {
+                // 许可可能已因租期到期被回收
+                log.warn("归还集群许可失败 {} - {}", cluster.getName(), e.getMessage());
+            } finally {
+                node.release();
+            }
+        };
+    }
+
+    private RPermitExpirableSemaphore clusterSemaphore(String name, int permits) {
+        if (permits <= 0) {
+            return null;
+        }
+        RPermitExpirableSemaphore semaphore = redissonClient.getPermitExpirableSemaphore(name);
+        // 仅在首次创建时设置许可数，已存在时沿用集群中的配置
+        semaphore.trySetPermits(permits);
+        return semaphore;
+    }
+
+    /**
+     * 已占用的名额，关闭时归还
+     */
+    @FunctionalInterface
+    public interface Permit extends AutoCloseable {
+
+        @Override
+        void close();
+
+    }
+
+}
@@ -0,0 +1,87 @@
+package com.lizhe.trigger.ingest;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 知识库导入任务配置
+ *
+ * @author 李哲
+ * @since 1.0
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "rag.ingest", ignoreInvalidFields = true)
+public class IngestionProperties {
+
+    /**
+     * 文档解析线程数，解析为CPU密集型，默认为CPU核数
+     */
+    private int parseThreads = Runtime.getRuntime().availableProcessors();
+    /**
+     * 文档切分线程数，默认为2
+     */
+    private int splitThreads = 2;
+    /**
+     * 向量化线程数，向量化为IO密集型，默认为4
+     */
+    private int embedThreads = 4;
+    /**
+     * 本节点同时进行中的向量化请求上限，用于保护嵌入模型服务，默认为4
+     */
+    private int maxInflightEmbeddings = 4;
+    /**
+     * 集群内同时进行中的向量化请求上限，基于Redis信号量，0表示不限制，默认为0
+     */
+    private int clusterMaxInflightEmbeddings = 0;
+    /**
+     * 文件大小达到该值（单位：字节）时使用流式解析切分，默认为8MB
+     */
+    private long streamingThresholdBytes = 8L * 1024 * 1024;
+    /**
+     * 单个向量化批次的最大片段数，默认为128
+     */
+    private int batchMaxChunks = 128;
+    /**
+     * 单个向量化批次的最大Token数，默认为65536
+     */
+    private int batchMaxTokens = 65536;
+    /**
+     * 片段在批处理器中的最长等待时间（单位：毫秒），默认为1000
+     */
+    private long batchMaxDelayMillis = 1000;
+    /**
+     * 向量入库线程数，默认为2
+     */
+    private int storeThreads = 2;
+    /**
+     * 各阶段之间队列的容量，队列满时上游阶段阻塞等待，默认为64
+     */
+    private int queueCapacity = 64;
+    /**
+     * Git仓库本地镜像的根目录，每个仓库一个子目录，用于增量导入
+     */
+    private String gitMirrorDir = "./git-mirrors";
+    /**
+     * 本节点同时执行的Git仓库导入任务上限，默认为2
+     */
+    private int nodeMaxGitJobs = 2;
+    /**
+     * 本节点同时进行的仓库拉取上限，默认为2
+     */
+    private int nodeMaxFetches = 2;
+    /**
+     * 集群内同时进行的仓库拉取上限，基于Redis信号量，0表示不限制，默认为0
+     */
+    private int clusterMaxFetches = 0;
+    /**
+     * 集群信号量许可的租期（单位：秒），节点异常退出时许可到期自动归还，默认为600
+     */
+    private int clusterPermitLeaseSeconds = 600;
+    /**
+     * 已结束任务在内存中的保留时间（单位：分钟），默认为60
+     */
+    private int jobRetentionMinutes = 60;
+
+}
@@ -0,0 +1,148 @@
+package com.lizhe.trigger.ingest;
+
+import com.alibaba.fastjson.JSON;
+import com.lizhe.trigger.rag.VectorStorageLayout;
+import com.pgvector.PGvector;
+import jakarta.annotation.Resource;
+import org.springframework.ai.document.Document;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+/**
+ * 向量入库写入器
+ * <p>
+ * 将已完成向量化的文档片段批量写入 PgVectorStore 使用的 vector_store 表。
+ * {@code PgVectorStore.add} 会在写入前逐条重新计算向量，无法与向量化阶段拆分，
+ * 因此导入流水线的入库阶段直接使用与其相同的 upsert 语句写表。分区存储模式下写入对应知识库标签的分区。
+ * </p>
+ *
+ * @author 李哲
+ * @since 1.0
+ */
+@Component
+public class PgVectorDocumentWriter {
+
+    private static final String UPSERT_SQL = "INSERT INTO vector_store (id, content, metadata, embedding) VALUES (?, ?, ?::jsonb, ?) "
+            + "ON CONFLICT (id) DO UPDATE SET content = ? , metadata = ?::jsonb , embedding = ? ";
+    private static final String PARTITIONED_UPSERT_SQL = "INSERT INTO " + VectorStorageLayout.PARTITIONED_TABLE
+            + " (knowledge, id, content, metadata, embedding) VALUES (?, ?, ?, ?::jsonb, ?) "
+            + "ON CONFLICT (knowledge, id) DO UPDATE SET content = EXCLUDED.content, metadata = EXCLUDED.metadata, embedding = EXCLUDED.embedding";
+
+    @Resource
+    private JdbcTemplate jdbcTemplate;
+    @Resource
+    private VectorStorageLayout layout;
+
+    /**
+     * 批量写入文档片段，文档必须已设置向量
+     *
+     * @param documents 已向量化的文档片段
+     */
+    public void write(List<Document> documents) {
+        if (documents.isEmpty()) {
+            return;
+        }
+        if (layout.isPartitioned()) {
+            writePartitioned(documents);
+            return;
+        }
+        jdbcTemplate.batchUpdate(UPSERT_SQL, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                Document document = documents.get(i);
+                String content = document.getContent();
+                String metadata = JSON.toJSONString(document.getMetadata());
+                PGvector embedding = new PGvector(toFloatArray(document.getEmbedding()));
+
+                ps.setObject(1, UUID.fromString(document.getId()));
+                ps.setString(2, content);
+                ps.setString(3, metadata);
+                ps.setObject(4, embedding);
+                ps.setString(5, content);
+                ps.setString(6, metadata);
+                ps.setObject(7, embedding);
+            }
+
+            @Override
+            public int getBatchSize() {
+                return documents.size();
+            }
+        });
+    }
+
+    /**
+     * 分区模式下按知识库标签分组，确保分区存在后写入分区父表
+     */
+    private void writePartitioned(List<Document> documents) {
+        Map<String, List<Document>> byTag = documents.stream()
+                .collect(Collectors.groupingBy(doc -> String.valueOf(doc.getMetadata().get("knowledge"))));
+        byTag.forEach((ragTag, tagDocuments) -> {
+            layout.ensurePartition(ragTag);
+            jdbcTemplate.batchUpdate(PARTITIONED_UPSERT_SQL, new BatchPreparedStatementSetter() {
+                @Override
+                public void setValues(PreparedStatement ps, int i) throws SQLException {
+                    Document document = tagDocuments.get(i);
+                    ps.setString(1, ragTag);
+                    ps.setObject(2, UUID.fromString(document.getId()));
+                    ps.setString(3, document.getContent());
+                    ps.setString(4, JSON.toJSONString(document.getMetadata()));
+                    ps.setObject(5, new PGvector(toFloatArray(document.getEmbedding())));
+                }
+
+                @Override
+                public int getBatchSize() {
+                    return tagDocuments.size();
+                }
+            });
+        });
+    }
+
+    private float[] toFloatArray(List<Double> embedding) {
+        float[] floats = new float[embedding.size()];
+        for (int i = 0; i < embedding.size(); i++) {
+            floats[i] = embedding.get(i).floatValue();
+        }
+        return floats;
+    }
+
+    /**
+     * 删除知识库中指定文件路径的全部片段
+     *
+     * @param ragTag 知识库标签
+     * @param paths  仓库内的文件路径
+     * @return 删除的片段数
+     */
+    public int deleteByPaths(String ragTag, Collection<String> paths) {
+        if (paths.isEmpty()) {
+            return 0;
+        }
+        return jdbcTemplate.update(con -> {
+            PreparedStatement ps = con.prepareStatement("DELETE FROM " + layout.table() + " WHERE " + layout.tagPredicate()
+                    + " AND metadata->>'path' = ANY (?)");
+            ps.setString(1, ragTag);
+            ps.setArray(2, con.createArrayOf("text", paths.toArray()));
+            return ps;
+        });
+    }
+
+    /**
+     * 删除知识库中所有带文件路径的片段，即由Git仓库导入的全部片段
+     *
+     * @param ragTag 知识库标签
+     * @return 删除的片段数
+     */
+    public int deleteAllPaths(String ragTag) {
+        return jdbcTemplate.update("DELETE FROM " + layout.table() + " WHERE " + layout.tagPredicate()
+                + " AND metadata->>'path' IS NOT NULL", ragTag);
+    }
+
+}
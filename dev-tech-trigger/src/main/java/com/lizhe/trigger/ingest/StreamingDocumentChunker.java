@@ -0,0 +1,177 @@
+package com.lizhe.trigger.ingest;
+
+import jakarta.annotation.Resource;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.metadata.TikaCoreProperties;
+import org.apache.tika.parser.AutoDetectParser;
+import org.apache.tika.parser.ParseContext;
+import org.springframework.stereotype.Component;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 流式文档切分器
+ * <p>
+ * {@code TikaDocumentReader} 会把整篇文档读成一个字符串后再交给 {@code TokenTextSplitter}，
+ * 大文件会在堆上同时存在全文、全文Token和全部片段。此切分器在Tika的SAX回调中增量接收文本，
+ * 缓冲区凑满一个片段即切出并交给下游，内存占用只与片段大小有关，与文档大小无关。
+ * 切分规则与 {@code TokenTextSplitter} 的默认配置一致：每片800个Token，优先在句末标点或换行处断开。
+ * </p>
+ *
+ * @author 李哲
+ * @since 1.0
+ */
+@Component
+public class StreamingDocumentChunker {
+
+    private static final int CHUNK_SIZE = 800;
+    private static final int MIN_CHUNK_SIZE_CHARS = 350;
+    private static final int MIN_CHUNK_LENGTH_TO_EMBED = 5;
+    /**
+     * 缓冲区每新增多少字符检查一次是否凑满片段，避免每次回调都重新编码
+     */
+    private static final int CHECK_INTERVAL_CHARS = 1024;
+    private static final Set<String> BLOCK_ELEMENTS = Set.of("p", "div", "li", "tr", "br", "h1", "h2", "h3", "h4", "h5", "h6", "pre");
+
+    @Resource
+    private TokenCounter tokenCounter;
+
+    private final AutoDetectParser parser = new AutoDetectParser();
+
+    /**
+     * 流式解析并切分文档
+     *
+     * @param inputStream 文档内容，由调用方关闭
+     * @param fileName    文件名，用于格式识别
+     * @param sink        片段接收方，在解析线程上同步调用，阻塞时解析随之暂停
+     */
+    public void chunk(InputStream inputStream, String fileName, ChunkSink sink) throws IOException, InterruptedException {
+        Metadata metadata = new Metadata();
+        metadata.set(TikaCoreProperties.RESOURCE_NAME_KEY, fileName);
+        ChunkingHandler handler = new ChunkingHandler(sink);
+        try {
+            parser.parse(inputStream, handler, metadata, new ParseContext());
+            handler.drain(true);
+        } catch (SAXException e) {
+            if (e.getCause() instanceof InterruptedException interrupted) {
+                throw interrupted;
+            }
+            throw new IOException("文档解析失败: " + fileName, e);
+        } catch (Exception e) {
+            if (e instanceof IOException io) {
+                throw io;
+            }
+            throw new IOException("文档解析失败: " + fileName, e);
+        }
+    }
+
+    private static String normalize(String text) {
+        return text.replace(System.lineSeparator(), " ").trim();
+    }
+
+    /**
+     * 片段接收方
+     */
+    @FunctionalInterface
+    public interface ChunkSink {
+        void accept(String chunk) throws InterruptedException;
+    }
+
+    private class ChunkingHandler extends DefaultHandler {
+
+        private final ChunkSink sink;
+        private final StringBuilder buffer = new StringBuilder();
+        private int charsSinceCheck;
+
+        ChunkingHandler(ChunkSink sink) {
+            this.sink = sink;
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) throws SAXException {
+            buffer.append(ch, start, length);
+            charsSinceCheck += length;
+            if (charsSinceCheck >= CHECK_INTERVAL_CHARS) {
+                charsSinceCheck = 0;
+                drain(false);
+            }
+        }
+
+        @Override
+        public void ignorableWhitespace(char[] ch, int start, int length) {
+            buffer.append(ch, start, length);
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) {
+            if (BLOCK_ELEMENTS.contains(localName)) {
+                buffer.append('\n');
+            }
+        }
+
+        /**
+         * 切出缓冲区中已凑满的片段
+         *
+         * @param last 文档已结束，剩余内容作为最后一个片段
+         */
+        void drain(boolean last) throws SAXException {
+            while (true) {
+                List<Integer> tokens = tokenCounter.encode(buffer.toString());
+                if (tokens.size() < CHUNK_SIZE) {
+                    break;
+                }
+                String text = tokenCounter.decode(tokens.subList(0, CHUNK_SIZE));
+                // 截断在多字节字符中间时解码结果末尾为替换字符，不计入已消费的前缀
+                int consumed = text.length();
+                while (consumed > 0 && text.charAt(consumed - 1) == '\uFFFD') {
+                    consumed--;
+                }
+                int lastPunctuation = Math.max(text.lastIndexOf('.'), Math.max(text.lastIndexOf('?'),
+                        Math.max(text.lastIndexOf('!'), text.lastIndexOf('\n'))));
+                if (lastPunctuation != -1 && lastPunctuation > MIN_CHUNK_SIZE_CHARS && lastPunctuation < consumed) {
+                    consumed = lastPunctuation + 1;
+                }
+                if (consumed == 0) {
+                    consumed = Math.min(buffer.length(), CHUNK_SIZE);
+                }
+                consumed = fit(consumed);
+                emit(buffer.substring(0, consumed));
+                buffer.delete(0, consumed);
+            }
+            if (last) {
+                emit(buffer.toString());
+                buffer.setLength(0);
+            }
+        }
+
+        /**
+         * 收缩切分位置：不在代理对中间切分；换行替换为空格后Token数偶尔多于原前缀，超出片段大小时逐字符缩短
+         */
+        private int fit(int end) {
+            while (end > 1 && (Character.isHighSurrogate(buffer.charAt(end - 1))
+                    || tokenCounter.count(normalize(buffer.substring(0, end))) > CHUNK_SIZE)) {
+                end--;
+            }
+            return end;
+        }
+
+        private void emit(String text) throws SAXException {
+            String chunk = normalize(text);
+            if (chunk.length() <= MIN_CHUNK_LENGTH_TO_EMBED) {
+                return;
+            }
+            try {
+                sink.accept(chunk);
+            } catch (InterruptedException e) {
+                throw new SAXException(e);
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,40 @@
+package com.lizhe.trigger.ingest;
+
+import com.knuddels.jtokkit.Encodings;
+import com.knuddels.jtokkit.api.Encoding;
+import com.knuddels.jtokkit.api.EncodingType;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Token计数器
+ * <p>与 {@code TokenTextSplitter} 使用相同的 CL100K_BASE 编码，保证计数结果与切分结果一致</p>
+ *
+ * @author 李哲
+ * @since 1.0
+ */
+@Component
+public class TokenCounter {
+
+    private final Encoding encoding = Encodings.newLazyEncodingRegistry().getEncoding(EncodingType.CL100K_BASE);
+
+    public int count(String text) {
+        if (text == null || text.isEmpty()) {
+            return 0;
+        }
+        return encoding.countTokens(text);
+    }
+
+    public List<Integer> encode(String text) {
+        return encoding.encode(text);
+    }
+
+    /**
+     * 解码Token序列，截断在多字节字符中间时结果末尾为替换字符U+FFFD
+     */
+    public String decode(List<Integer> tokens) {
+        return encoding.decode(tokens);
+    }
+
+}
@@ -0,0 +1,50 @@
+package com.lizhe.trigger.ingest.reader;
+
+import org.springframework.ai.document.Document;
+import org.springframework.core.io.Resource;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 导入文档读取器
+ * <p>按文件扩展名注册到 {@link DocumentReaderRegistry}，未注册的扩展名由Tika读取器兜底</p>
+ *
+ * @author 李哲
+ * @since 1.0
+ */
+public interface IngestionDocumentReader {
+
+    /**
+     * 读取器名称，用于统计和日志
+     */
+    String name();
+
+    /**
+     * 支持的文件扩展名（小写，不含点号），为空表示作为兜底读取器
+     */
+    Set<String> extensions();
+
+    /**
+     * 读取文件内容
+     *
+     * @param resource 文件资源
+     * @param fileName 文件名
+     * @return 文档列表
+     * @throws UnsupportedContentException 内容不适合该读取器时抛出，由注册表改用兜底读取器
+     */
+    List<Document> read(Resource resource, String fileName) throws IOException;
+
+    /**
+     * 内容不适合当前读取器，例如按扩展名判断为文本文件但实际不是合法的UTF-8
+     */
+    class UnsupportedContentException extends IOException {
+
+        public UnsupportedContentException(String message, Throwable cause) {
+            super(message, cause);
+        }
+
+    }
+
+}
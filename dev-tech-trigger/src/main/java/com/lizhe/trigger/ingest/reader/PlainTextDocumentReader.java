@@ -0,0 +1,75 @@
+package com.lizhe.trigger.ingest.reader;
+
+import org.springframework.ai.document.Document;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 纯文本文档读取器
+ * <p>
+ * 源码、Markdown、JSON、XML等纯文本文件直接读取字节并按UTF-8解码，
+ * 跳过Tika的格式探测、解析器查找和XHTML SAX转换。内容不是合法UTF-8时交由Tika处理。
+ * </p>
+ *
+ * @author 李哲
+ * @since 1.0
+ */
+@Component
+public class PlainTextDocumentReader implements IngestionDocumentReader {
+
+    private static final Set<String> EXTENSIONS = Set.of("txt", "md", "java", "py", "js", "json", "xml");
+
+    @Override
+    public String name() {
+        return "plain-text";
+    }
+
+    @Override
+    public Set<String> extensions() {
+        return EXTENSIONS;
+    }
+
+    @Override
+    public List<Document> read(Resource resource, String fileName) throws IOException {
+        byte[] bytes;
+        if (resource.isFile()) {
+            bytes = Files.readAllBytes(resource.getFile().toPath());
+        } else {
+            try (InputStream inputStream = resource.getInputStream()) {
+                bytes = inputStream.readAllBytes();
+            }
+        }
+
+        String text;
+        try {
+            text = StandardCharsets.UTF_8.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPORT)
+                    .onUnmappableCharacter(CodingErrorAction.REPORT)
+                    .decode(ByteBuffer.wrap(bytes))
+                    .toString();
+        } catch (CharacterCodingException e) {
+            throw new UnsupportedContentException("不是合法的UTF-8文本: " + fileName, e);
+        }
+        // 去除UTF-8 BOM
+        if (!text.isEmpty() && text.charAt(0) == '\uFEFF') {
+            text = text.substring(1);
+        }
+
+        Map<String, Object> metadata = new HashMap<>();
+        metadata.put("source", fileName);
+        return List.of(new Document(text, metadata));
+    }
+
+}
@@ -0,0 +1,35 @@
+package com.lizhe.trigger.ingest.reader;
+
+import org.springframework.ai.document.Document;
+import org.springframework.ai.reader.tika.TikaDocumentReader;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Tika文档读取器，用于PDF、Word等二进制格式，同时作为未注册扩展名的兜底读取器
+ *
+ * @author 李哲
+ * @since 1.0
+ */
+@Component
+public class TikaIngestionDocumentReader implements IngestionDocumentReader {
+
+    @Override
+    public String name() {
+        return "tika";
+    }
+
+    @Override
+    public Set<String> extensions() {
+        return Set.of();
+    }
+
+    @Override
+    public List<Document> read(Resource resource, String fileName) {
+        return new TikaDocumentReader(resource).get();
+    }
+
+}
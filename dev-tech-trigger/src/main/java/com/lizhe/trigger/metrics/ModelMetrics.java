@@ -0,0 +1,21 @@
+package com.lizhe.trigger.metrics;
+
+/**
+ * 可查询运行指标的模型组件，由 {@code /api/v1/model/metrics} 汇总输出
+ *
+ * @author 李哲
+ * @since 1.0
+ */
+public interface ModelMetrics {
+
+    /**
+     * 指标名称，汇总结果中的键
+     */
+    String metricsName();
+
+    /**
+     * 当前指标快照
+     */
+    Object stats();
+
+}
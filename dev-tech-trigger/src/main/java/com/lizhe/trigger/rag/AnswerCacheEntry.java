@@ -0,0 +1,37 @@
+package com.lizhe.trigger.rag;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+/**
+ * 问答缓存条目
+ *
+ * @author 李哲
+ * @since 1.0
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class AnswerCacheEntry implements Serializable {
+
+    /**
+     * 原始问题
+     */
+    private String question;
+    /**
+     * 问题向量，已归一化为单位向量
+     */
+    private float[] embedding;
+    /**
+     * 模型生成的完整回答
+     */
+    private String answer;
+    /**
+     * 缓存时间戳（单位：毫秒）
+     */
+    private long createTime;
+
+}
@@ -0,0 +1,39 @@
+package com.lizhe.trigger.rag;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 知识库问答语义缓存配置
+ *
+ * @author 李哲
+ * @since 1.0
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "rag.answer-cache", ignoreInvalidFields = true)
+public class AnswerCacheProperties {
+
+    /**
+     * 是否启用问答缓存，默认为true
+     */
+    private boolean enabled = true;
+    /**
+     * 问题向量余弦相似度达到该值时视为同一问题，默认为0.95
+     */
+    private double similarityThreshold = 0.95;
+    /**
+     * 每个 模型 + 知识库标签 保留的最大缓存条目数，超过后淘汰最早的条目，默认为256
+     */
+    private int maxEntriesPerScope = 256;
+    /**
+     * 缓存过期时间（单位：小时），默认为24
+     */
+    private long ttlHours = 24;
+    /**
+     * 回放缓存答案时每个流式片段的字符数，默认为32
+     */
+    private int replayChunkChars = 32;
+
+}
@@ -0,0 +1,138 @@
+package com.lizhe.trigger.rag;
+
+import com.lizhe.trigger.ingest.TokenCounter;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 知识库上下文装填
+ * <p>
+ * 位于检索与提示词组装之间：按检索得分和最大边际相关性（MMR）依次挑选片段，
+ * 与已选片段高度重叠的片段直接丢弃，放不进剩余Token预算的片段跳过，直到达到模型的上下文预算或片段数上限。
+ * 片段之间的相似度使用字符3-gram的Jaccard系数，对中文和代码都适用，且无需取回片段向量。
+ * </p>
+ *
+ * @author 李哲
+ * @since 1.0
+ */
+@Slf4j
+@Component
+public class ContextPacker {
+
+    static final String SEPARATOR = "\n\n---\n\n";
+
+    @Resource
+    private TokenCounter tokenCounter;
+    @Resource
+    private ContextPackerProperties properties;
+
+    /**
+     * 装填上下文
+     *
+     * @param model      模型名称，用于确定Token预算
+     * @param candidates 按得分降序排列的候选片段
+     * @return 装填结果
+     */
+    public PackedContext pack(String model, List<Document> candidates) {
+        int budget = properties.tokenBudget(model);
+        int separatorTokens = tokenCounter.count(SEPARATOR);
+
+        List<Candidate> pool = new ArrayList<>(candidates.size());
+        for (int i = 0; i < candidates.size(); i++) {
+            Document document = candidates.get(i);
+            // 候选已按得分降序排列，以名次换算相关度，避免不同检索方式的得分量纲不一致
+            double relevance = 1.0 - (double) i / Math.max(1, candidates.size());
+            pool.add(new Candidate(document, relevance, tokenCounter.count(document.getContent()), shingles(document.getContent())));
+        }
+
+        List<Candidate> selected = new ArrayList<>();
+        int usedTokens = 0;
+        int duplicates = 0;
+        while (!pool.isEmpty() && selected.size() < properties.getMaxChunks()) {
+            Candidate best = null;
+            double bestScore = Double.NEGATIVE_INFINITY;
+            for (var iterator = pool.iterator(); iterator.hasNext(); ) {
+                Candidate candidate = iterator.next();
+                double redundancy = 0;
+                for (Candidate chosen : selected) {
+                    redundancy = Math.max(redundancy, jaccard(candidate.shingles, chosen.shingles));
+                }
+                if (redundancy >= properties.getDuplicateThreshold()) {
+                    iterator.remove();
+                    duplicates++;
+                    continue;
+                }
+                int cost = candidate.tokens + (selected.isEmpty() ? 0 : separatorTokens);
+                if (usedTokens + cost > budget) {
+                    continue;
+                }
+                double score = properties.getMmrLambda() * candidate.relevance - (1 - properties.getMmrLambda()) * redundancy;
+                if (score > bestScore) {
+                    best = candidate;
+                    bestScore = score;
+                }
+            }
+            if (best == null) {
+                break;
+            }
+            usedTokens += best.tokens + (selected.isEmpty() ? 0 : separatorTokens);
+            selected.add(best);
+            pool.remove(best);
+        }
+
+        List<Document> documents = selected.stream().map(Candidate::document).toList();
+        String text = String.join(SEPARATOR, documents.stream().map(Document::getContent).toList());
+        log.debug("上下文装填 model:{} 候选:{} 选中:{} 重复丢弃:{} Token:{}/{}", model, candidates.size(), documents.size(), duplicates, usedTokens, budget);
+        return new PackedContext(text, documents, usedTokens, budget);
+    }
+
+    private static Set<String> shingles(String text) {
+        String normalized = text == null ? "" : text.replaceAll("\\s+", " ").trim();
+        Set<String> shingles = new HashSet<>();
+        if (normalized.length() < 3) {
+            shingles.add(normalized);
+            return shingles;
+        }
+        for (int i = 0; i + 3 <= normalized.length(); i++) {
+            shingles.add(normalized.substring(i, i + 3));
+        }
+        return shingles;
+    }
+
+    private static double jaccard(Set<String> a, Set<String> b) {
+        if (a.isEmpty() && b.isEmpty()) {
+            return 1.0;
+        }
+        Set<String> smaller = a.size() <= b.size() ? a : b;
+        Set<String> larger = smaller == a ? b : a;
+        int intersection = 0;
+        for (String shingle : smaller) {
+            if (larger.contains(shingle)) {
+                intersection++;
+            }
+        }
+        return (double) intersection / (a.size() + b.size() - intersection);
+    }
+
+    private record Candidate(Document document, double relevance, int tokens, Set<String> shingles) {
+    }
+
+    /**
+     * 装填结果
+     *
+     * @param text      拼接后的上下文
+     * @param documents 选中的片段
+     * @param tokens    上下文Token数
+     * @param budget    Token预算
+     */
+    public record PackedContext(String text, List<Document> documents, int tokens, int budget) {
+    }
+
+}
@@ -0,0 +1,54 @@
+package com.lizhe.trigger.rag;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 知识库上下文装填配置
+ *
+ * @author 李哲
+ * @since 1.0
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "rag.context", ignoreInvalidFields = true)
+public class ContextPackerProperties {
+
+    /**
+     * 是否启用上下文装填，关闭时按检索顺序直接拼接topK个片段，默认为true
+     */
+    private boolean enabled = true;
+    /**
+     * 每个知识库标签检索的候选片段数，装填时从中挑选，默认为12
+     */
+    private int candidates = 12;
+    /**
+     * 最多装填的片段数，默认为6
+     */
+    private int maxChunks = 6;
+    /**
+     * 最大边际相关性中相关度的权重，取值0~1，越小越偏向多样性，默认为0.7
+     */
+    private double mmrLambda = 0.7;
+    /**
+     * 与已选片段的文本相似度（字符3-gram的Jaccard系数）达到该值时视为重复片段并丢弃，默认为0.8
+     */
+    private double duplicateThreshold = 0.8;
+    /**
+     * 未单独配置的模型使用的上下文Token预算，默认为2048
+     */
+    private int defaultTokenBudget = 2048;
+    /**
+     * 按模型配置的上下文Token预算，模型名含冒号等字符时在YAML中使用 "[deepseek-r1:1.5b]" 形式的键
+     */
+    private Map<String, Integer> modelTokenBudgets = new HashMap<>();
+
+    public int tokenBudget(String model) {
+        return modelTokenBudgets.getOrDefault(model, defaultTokenBudget);
+    }
+
+}
@@ -0,0 +1,51 @@
+package com.lizhe.trigger.rag;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 混合检索配置
+ *
+ * @author 李哲
+ * @since 1.0
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "rag.hybrid", ignoreInvalidFields = true)
+public class HybridRetrievalProperties {
+
+    /**
+     * 是否启用全文检索与向量检索的混合检索，默认为true；关闭时只使用向量检索
+     */
+    private boolean enabled = true;
+    /**
+     * 问答时放入提示词的片段数，默认为4
+     */
+    private int topK = 4;
+    /**
+     * 全文检索与向量检索各自召回的候选数 = topK × 倍数，默认为4
+     */
+    private int candidateMultiplier = 4;
+    /**
+     * 倒数排名融合的平滑常数k，得分为 Σ 1/(k + 排名)，默认为60
+     */
+    private int rrfK = 60;
+    /**
+     * 全文检索使用的分词配置，默认为simple，不做词干化，适合类名、错误码、配置项等标识符；修改后需删除 content_tsv 列重建
+     */
+    private String textSearchConfig = "simple";
+    /**
+     * 全文检索线程数，默认为4
+     */
+    private int threads = 4;
+    /**
+     * 等待全文检索结果的超时时间（单位：毫秒），超时后取消查询并只使用向量检索结果，默认为2000
+     */
+    private long lexicalTimeoutMillis = 2000;
+    /**
+     * 为已有数据回填全文检索列时每批更新的行数，默认为1000
+     */
+    private int backfillBatchSize = 1000;
+
+}
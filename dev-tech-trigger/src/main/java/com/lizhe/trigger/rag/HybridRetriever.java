@@ -0,0 +1,438 @@
+package com.lizhe.trigger.rag;
+
+import com.alibaba.fastjson.JSON;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 全文检索与向量检索的混合检索
+ * <p>
+ * 向量检索擅长语义相近的问题，但对类名、错误码、配置项等标识符召回较弱。
+ * 每个片段在表中额外保存由内容生成的 tsvector 列并建立GIN索引，检索时全文检索与向量检索并行执行，
+ * 按倒数排名融合（RRF）合并两路结果，用较小的topK得到更相关的上下文。
+ * 全文检索超时，或调用方因超时取消检索（检索线程被中断）时，取消正在执行的SQL并只使用向量检索结果，不再占用全文检索线程和数据库连接。
+ * </p>
+ * <p>
+ * tsvector 列和GIN索引由 {@link VectorIndexManager} 的后台维护线程创建，不阻塞启动和读写：先添加可空列（只修改元数据），
+ * 再以触发器维护新写入的行，按主键分批回填已有数据，最后以 {@code CREATE INDEX CONCURRENTLY} 建索引。
+ * 列和索引就绪之前只使用向量检索。多个节点同时启动时通过advisory锁只由一个节点执行迁移。
+ * </p>
+ *
+ * @author 李哲
+ * @since 1.0
+ */
+@Slf4j
+@Component
+public class HybridRetriever {
+
+    private static final String TSV_COLUMN = "content_tsv";
+    private static final String TSV_TRIGGER = "rag_content_tsv_refresh";
+    private static final String MIGRATION_LOCK = "rag_content_tsv_migration";
+    /**
+     * 未就绪时重新检查列和索引状态的间隔，其他节点完成迁移后本节点随之启用全文检索
+     */
+    private static final long READY_CHECK_INTERVAL_MILLIS = 30_000;
+    private static final long LOCK_TIMEOUT_MILLIS = 5_000;
+    private static final int LOCK_ATTEMPTS = 10;
+    /**
+     * PostgreSQL lock_not_available
+     */
+    private static final String LOCK_NOT_AVAILABLE = "55P03";
+
+    @Resource
+    private JdbcTemplate jdbcTemplate;
+    @Resource
+    private VectorRetriever vectorRetriever;
+    @Resource
+    private VectorStorageLayout layout;
+    @Resource
+    private HybridRetrievalProperties properties;
+    @Resource
+    private VectorIndexManager vectorIndexManager;
+
+    private ExecutorService executor;
+    private volatile boolean textSearchReady;
+    private volatile long lastReadyCheckMillis;
+
+    @PostConstruct
+    public void init() {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        AtomicInteger threadIndex = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(properties.getThreads(), runnable -> {
+            Thread thread = new Thread(runnable, "rag-hybrid-" + threadIndex.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+        textSearchReady = checkTextSearchReady();
+        log.info("混合检索已启用 分词配置:{} topK:{} 候选倍数:{} 全文索引就绪:{}", properties.getTextSearchConfig(),
+                properties.getTopK(), properties.getCandidateMultiplier(), textSearchReady);
+        if (!textSearchReady) {
+            vectorIndexManager.submitMigration("全文检索列与索引", this::migrate);
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * 使用配置的topK检索知识库
+     *
+     * @param query  检索问题
+     * @param ragTag 知识库标签
+     * @return 按融合得分降序排列的文档片段
+     */
+    public List<Document> retrieve(String query, String ragTag) {
+        return retrieve(query, ragTag, properties.getTopK());
+    }
+
+    /**
+     * 使用默认索引查询参数检索知识库
+     *
+     * @param query  检索问题
+     * @param ragTag 知识库标签
+     * @param topK   返回的片段数
+     * @return 按融合得分降序排列的文档片段，元数据中包含rrf_score
+     */
+    public List<Document> retrieve(String query, String ragTag, int topK) {
+        return retrieve(query, ragTag, topK, RetrievalTuning.DEFAULT);
+    }
+
+    /**
+     * 检索知识库，未启用混合检索或全文索引尚未就绪时只使用向量检索
+     *
+     * @param query  检索问题
+     * @param ragTag 知识库标签
+     * @param topK   返回的片段数
+     * @param tuning 向量检索的索引查询参数
+     * @return 按融合得分降序排列的文档片段，元数据中包含rrf_score
+     */
+    public List<Document> retrieve(String query, String ragTag, int topK, RetrievalTuning tuning) {
+        if (!properties.isEnabled() || !isTextSearchReady()) {
+            return vectorRetriever.retrieve(new VectorRetriever.RetrievalRequest(query, ragTag, topK, tuning));
+        }
+        int candidates = topK * properties.getCandidateMultiplier();
+        AtomicReference<PreparedStatement> statement = new AtomicReference<>();
+        Future<List<Document>> lexical = executor.submit(() -> lexicalSearch(query, ragTag, candidates, statement));
+        List<Document> semantic;
+        try {
+            semantic = vectorRetriever.retrieve(new VectorRetriever.RetrievalRequest(query, ragTag, candidates, tuning));
+        } catch (RuntimeException e) {
+            cancel(lexical, statement);
+            throw e;
+        }
+
+        List<Document> keyword = List.of();
+        try {
+            keyword = lexical.get(properties.getLexicalTimeoutMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            // 调用方已取消本次检索，结果不再使用
+            cancel(lexical, statement);
+            Thread.currentThread().interrupt();
+        } catch (TimeoutException e) {
+            cancel(lexical, statement);
+            log.warn("全文检索超时，只使用向量检索结果 ragTag:{} timeout:{}ms", ragTag, properties.getLexicalTimeoutMillis());
+        } catch (ExecutionException e) {
+            log.warn("全文检索失败，只使用向量检索结果 ragTag:{} {}", ragTag, e.getCause().getMessage());
+        }
+        return fuse(List.of(semantic, keyword), topK);
+    }
+
+    /**
+     * 取消全文检索：未开始的任务直接取消，执行中的SQL通过 {@link Statement#cancel()} 通知数据库终止
+     */
+    private static void cancel(Future<?> lexical, AtomicReference<PreparedStatement> statement) {
+        lexical.cancel(true);
+        PreparedStatement running = statement.get();
+        if (running == null) {
+            return;
+        }
+        try {
+            running.cancel();
+        } catch (SQLException e) {
+            // 语句已执行完毕并关闭
+            log.debug("取消全文检索语句失败 {}", e.getMessage());
+        }
+    }
+
+    private List<Document> lexicalSearch(String query, String ragTag, int limit, AtomicReference<PreparedStatement> running) {
+        // plainto_tsquery 为AND语义，改为OR以召回只包含部分关键词的片段，再按覆盖密度排序
+        String sql = "SELECT id, content, metadata, ts_rank_cd(" + TSV_COLUMN + ", q) AS rank FROM " + layout.table()
+                + ", replace(plainto_tsquery(?::regconfig, ?)::text, '&', '|')::tsquery q"
+                + " WHERE " + layout.tagPredicate() + " AND " + TSV_COLUMN + " @@ q ORDER BY rank DESC LIMIT ?";
+        return jdbcTemplate.query(con -> {
+            PreparedStatement statement = con.prepareStatement(sql);
+            statement.setString(1, properties.getTextSearchConfig());
+            statement.setString(2, query);
+            statement.setString(3, ragTag);
+            statement.setInt(4, limit);
+            // 取消可能发生在登记语句之前，再以数据库侧的语句超时兜底
+            statement.setQueryTimeout((int) Math.max(1, TimeUnit.MILLISECONDS.toSeconds(properties.getLexicalTimeoutMillis() + 999)));
+            running.set(statement);
+            if (Thread.currentThread().isInterrupted()) {
+                statement.close();
+                throw new SQLException("全文检索已取消");
+            }
+            return statement;
+        }, (rs, rowNum) -> {
+            Map<String, Object> metadata = new HashMap<>(JSON.parseObject(rs.getString("metadata")));
+            metadata.put("text_rank", rs.getFloat("rank"));
+            return new Document(rs.getString("id"), rs.getString("content"), metadata);
+        });
+    }
+
+    private boolean isTextSearchReady() {
+        if (textSearchReady) {
+            return true;
+        }
+        long now = System.currentTimeMillis();
+        if (now - lastReadyCheckMillis < READY_CHECK_INTERVAL_MILLIS) {
+            return false;
+        }
+        lastReadyCheckMillis = now;
+        try {
+            textSearchReady = checkTextSearchReady();
+        } catch (Exception e) {
+            log.warn("检查全文索引状态失败 {}", e.getMessage());
+        }
+        return textSearchReady;
+    }
+
+    /**
+     * 检索表上存在 tsvector 列且GIN索引有效；索引在回填完成后才创建，有效即说明已有数据均已回填
+     */
+    private boolean checkTextSearchReady() {
+        String table = layout.table();
+        Boolean ready = jdbcTemplate.queryForObject("SELECT EXISTS (SELECT 1 FROM pg_attribute a JOIN pg_index i ON i.indexrelid = to_regclass(?) "
+                        + "WHERE a.attrelid = to_regclass(?) AND a.attname = ? AND NOT a.attisdropped AND i.indisvalid)",
+                Boolean.class, textIndexName(table), table, TSV_COLUMN);
+        return Boolean.TRUE.equals(ready);
+    }
+
+    private void migrate() {
+        jdbcTemplate.execute((ConnectionCallback<Void>) con -> {
+            try (Statement statement = con.createStatement()) {
+                try (ResultSet rs = statement.executeQuery("SELECT pg_try_advisory_lock(hashtext('" + MIGRATION_LOCK + "'))")) {
+                    rs.next();
+                    if (!rs.getBoolean(1)) {
+                        log.info("其他节点正在创建全文检索列与索引，完成后自动启用");
+                        return null;
+                    }
+                }
+                try {
+                    migrate(con, statement);
+                } finally {
+                    statement.execute("SELECT pg_advisory_unlock(hashtext('" + MIGRATION_LOCK + "'))");
+                }
+            }
+            return null;
+        });
+        textSearchReady = checkTextSearchReady();
+    }
+
+    private void migrate(Connection con, Statement statement) throws SQLException {
+        String table = layout.table();
+        String config = properties.getTextSearchConfig().replace("'", "");
+        String tsvector = "to_tsvector('" + config + "'::regconfig, coalesce(content, ''))";
+
+        addColumn(statement, table);
+
+        // 早期版本以生成列添加，数据库已在维护，无需触发器和回填
+        if (!isGeneratedColumn(statement, table)) {
+            statement.execute("CREATE OR REPLACE FUNCTION " + TSV_TRIGGER + "() RETURNS trigger AS $$ BEGIN NEW." + TSV_COLUMN
+                    + " := to_tsvector('" + config + "'::regconfig, coalesce(NEW.content, '')); RETURN NEW; END $$ LANGUAGE plpgsql");
+            try (ResultSet rs = statement.executeQuery("SELECT 1 FROM pg_trigger WHERE tgrelid = '" + table + "'::regclass AND tgname = '" + TSV_TRIGGER + "'")) {
+                if (!rs.next()) {
+                    statement.execute("CREATE TRIGGER " + TSV_TRIGGER + " BEFORE INSERT OR UPDATE OF content ON " + table
+                            + " FOR EACH ROW EXECUTE FUNCTION " + TSV_TRIGGER + "()");
+                }
+            }
+            long updated = backfill(con, table, tsvector);
+            log.info("全文检索列回填完成 {} 行数:{}", table, updated);
+        }
+
+        String index = textIndexName(table);
+        if (layout.isPartitioned()) {
+            // 分区表不支持并发建索引：父表上先建只属于父表的索引，各分区并发建索引后挂载，全部挂载后父表索引生效，
+            // 此后新建的分区自动创建该索引
+            statement.execute("CREATE INDEX IF NOT EXISTS " + index + " ON ONLY " + table + " USING gin (" + TSV_COLUMN + ")");
+            for (VectorStorageLayout.IndexTarget target : layout.indexTargets()) {
+                String partitionIndex = textIndexName(target.table());
+                createIndexConcurrently(statement, partitionIndex, target.table());
+                statement.execute("ALTER INDEX " + index + " ATTACH PARTITION " + partitionIndex);
+            }
+        } else {
+            createIndexConcurrently(statement, index, table);
+        }
+    }
+
+    /**
+     * 可空且无默认值的列只修改元数据，但仍需短暂的排他锁；拿不到锁时快速失败并稍后重试，避免排在长事务后面阻塞其他读写
+     */
+    private void addColumn(Statement statement, String table) throws SQLException {
+        statement.execute("SET lock_timeout = '" + LOCK_TIMEOUT_MILLIS + "ms'");
+        try {
+            for (int attempt = 1; ; attempt++) {
+                try {
+                    statement.execute("ALTER TABLE " + table + " ADD COLUMN IF NOT EXISTS " + TSV_COLUMN + " tsvector");
+                    return;
+                } catch (SQLException e) {
+                    if (!LOCK_NOT_AVAILABLE.equals(e.getSQLState()) || attempt >= LOCK_ATTEMPTS) {
+                        throw e;
+                    }
+                    log.info("添加全文检索列等待表锁超时，稍后重试 {}/{}", attempt, LOCK_ATTEMPTS);
+                    sleep(LOCK_TIMEOUT_MILLIS);
+                }
+            }
+        } finally {
+            statement.execute("RESET lock_timeout");
+        }
+    }
+
+    private static void sleep(long millis) throws SQLException {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("迁移被中断", e);
+        }
+    }
+
+    /**
+     * 按主键分批回填，每批一个短事务，避免长时间持有行锁和产生大事务
+     *
+     * @return 回填的行数
+     */
+    private long backfill(Connection con, String table, String tsvector) throws SQLException {
+        String columns = layout.isPartitioned() ? "knowledge, id" : "id";
+        int keyColumns = layout.isPartitioned() ? 2 : 1;
+        String key = "(" + columns + ")";
+        String placeholders = layout.isPartitioned() ? "(?, ?)" : "(?)";
+        int batchSize = Math.max(1, properties.getBackfillBatchSize());
+        String firstBoundSql = "SELECT " + columns + " FROM " + table + " ORDER BY " + columns + " OFFSET " + (batchSize - 1) + " LIMIT 1";
+        String boundSql = "SELECT " + columns + " FROM " + table + " WHERE " + key + " > " + placeholders
+                + " ORDER BY " + columns + " OFFSET " + (batchSize - 1) + " LIMIT 1";
+
+        long updated = 0;
+        Object[] from = null;
+        while (true) {
+            // 本批次的上界，不足一批时为空，回填剩余全部行
+            Object[] to;
+            try (PreparedStatement bound = con.prepareStatement(from == null ? firstBoundSql : boundSql)) {
+                bind(bound, 1, from);
+                try (ResultSet rs = bound.executeQuery()) {
+                    to = rs.next() ? readKey(rs, keyColumns) : null;
+                }
+            }
+            String updateSql = "UPDATE " + table + " SET " + TSV_COLUMN + " = " + tsvector + " WHERE " + TSV_COLUMN + " IS NULL"
+                    + (from == null ? "" : " AND " + key + " > " + placeholders)
+                    + (to == null ? "" : " AND " + key + " <= " + placeholders);
+            try (PreparedStatement update = con.prepareStatement(updateSql)) {
+                bind(update, bind(update, 1, from), to);
+                updated += update.executeUpdate();
+            }
+            if (to == null) {
+                return updated;
+            }
+            from = to;
+        }
+    }
+
+    private static int bind(PreparedStatement statement, int index, Object[] values) throws SQLException {
+        if (values == null) {
+            return index;
+        }
+        for (Object value : values) {
+            statement.setObject(index++, value);
+        }
+        return index;
+    }
+
+    private static Object[] readKey(ResultSet rs, int columns) throws SQLException {
+        Object[] key = new Object[columns];
+        for (int i = 0; i < columns; i++) {
+            key[i] = rs.getObject(i + 1);
+        }
+        return key;
+    }
+
+    private boolean isGeneratedColumn(Statement statement, String table) throws SQLException {
+        try (ResultSet rs = statement.executeQuery("SELECT attgenerated FROM pg_attribute WHERE attrelid = '" + table
+                + "'::regclass AND attname = '" + TSV_COLUMN + "' AND NOT attisdropped")) {
+            return rs.next() && "s".equals(rs.getString(1));
+        }
+    }
+
+    /**
+     * 并发建索引，先清理上次失败遗留的无效索引
+     */
+    private void createIndexConcurrently(Statement statement, String index, String table) throws SQLException {
+        boolean invalid;
+        try (ResultSet rs = statement.executeQuery("SELECT indisvalid FROM pg_index WHERE indexrelid = to_regclass('" + index + "')")) {
+            invalid = rs.next() && !rs.getBoolean(1);
+        }
+        if (invalid) {
+            statement.execute("DROP INDEX CONCURRENTLY IF EXISTS " + index);
+        }
+        log.info("开始构建全文索引 {} ON {}", index, table);
+        statement.execute("CREATE INDEX CONCURRENTLY IF NOT EXISTS " + index + " ON " + table + " USING gin (" + TSV_COLUMN + ")");
+    }
+
+    private static String textIndexName(String table) {
+        return table + "_" + TSV_COLUMN + "_idx";
+    }
+
+    /**
+     * 倒数排名融合，各路结果中排名越靠前得分越高，同时出现在多路结果中的片段得分累加
+     */
+    private List<Document> fuse(List<List<Document>> rankings, int topK) {
+        Map<String, Document> documents = new LinkedHashMap<>();
+        Map<String, Double> scores = new HashMap<>();
+        for (List<Document> ranking : rankings) {
+            for (int rank = 0; rank < ranking.size(); rank++) {
+                Document document = ranking.get(rank);
+                documents.merge(document.getId(), document, (existing, other) -> {
+                    existing.getMetadata().putAll(other.getMetadata());
+                    return existing;
+                });
+                scores.merge(document.getId(), 1.0 / (properties.getRrfK() + rank + 1), Double::sum);
+            }
+        }
+        List<Document> fused = new ArrayList<>(documents.values());
+        fused.sort((a, b) -> Double.compare(scores.get(b.getId()), scores.get(a.getId())));
+        List<Document> result = fused.subList(0, Math.min(topK, fused.size()));
+        result.forEach(document -> document.getMetadata().put("rrf_score", scores.get(document.getId())));
+        return new ArrayList<>(result);
+    }
+
+}
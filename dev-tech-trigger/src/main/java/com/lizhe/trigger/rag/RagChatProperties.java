@@ -0,0 +1,39 @@
+package com.lizhe.trigger.rag;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 知识库问答流水线配置
+ *
+ * @author 李哲
+ * @since 1.0
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "rag.chat", ignoreInvalidFields = true)
+public class RagChatProperties {
+
+    /**
+     * 问题向量化、缓存查找和知识库检索使用的线程数上限，默认为CPU核数的4倍
+     */
+    private int retrievalThreads = Runtime.getRuntime().availableProcessors() * 4;
+    /**
+     * 检索线程全忙时可排队的任务数，超过后请求直接失败，默认为512
+     */
+    private int retrievalQueueCapacity = 512;
+    /**
+     * 问答缓存查找超时时间（单位：毫秒），超时视为未命中，默认为2000
+     */
+    private long cacheLookupTimeoutMillis = 2000;
+    /**
+     * 多知识库检索时单个标签的时间预算（单位：毫秒），超时的标签被忽略，默认为3000
+     */
+    private long perTagTimeoutMillis = 3000;
+    /**
+     * 知识库检索及提示词组装超时时间（单位：毫秒），超时请求失败，默认为10000
+     */
+    private long retrievalTimeoutMillis = 10000;
+
+}
@@ -0,0 +1,174 @@
+package com.lizhe.trigger.rag;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.ai.chat.ChatResponse;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.prompt.SystemPromptTemplate;
+import org.springframework.ai.document.Document;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * 知识库问答流水线
+ * <p>
+ * 将问答缓存查找、知识库检索和提示词组装组织为在独立有界调度器上执行的 {@link Mono} 链，
+ * 完成后衔接模型的流式输出。控制器只返回 {@link Flux}，请求线程不等待检索；
+ * 客户端断开时取消信号沿链路传递，尚未完成的检索任务被中断，模型流不会再被订阅。
+ * </p>
+ * <p>
+ * 同时检索多个知识库时每个标签并行检索并有独立的时间预算，结果合并为全局topK。
+ * 启用上下文装填时每个标签检索更多候选，由 {@link ContextPacker} 按模型的Token预算挑选互不重复的片段。
+ * </p>
+ *
+ * @author 李哲
+ * @since 1.0
+ */
+@Slf4j
+@Component
+public class RagChatService {
+
+    private static final String SYSTEM_PROMPT = """
+            Use the information from the DOCUMENTS section to provide accurate answers but act as if you knew this information innately.
+            If unsure, simply state that you don't know.
+            Another thing you need to note is that your reply must be in Chinese!
+            DOCUMENTS:
+                {documents}
+            """;
+
+    @Resource
+    private SemanticAnswerCache semanticAnswerCache;
+    @Resource
+    private HybridRetriever hybridRetriever;
+    @Resource
+    private HybridRetrievalProperties hybridProperties;
+    @Resource
+    private RagChatProperties properties;
+    @Resource
+    private ContextPacker contextPacker;
+    @Resource
+    private ContextPackerProperties contextProperties;
+
+    private Scheduler retrievalScheduler;
+
+    @PostConstruct
+    public void init() {
+        retrievalScheduler = Schedulers.newBoundedElastic(properties.getRetrievalThreads(), properties.getRetrievalQueueCapacity(),
+                "rag-retrieval", 60, true);
+    }
+
+    @PreDestroy
+    public void stop() {
+        retrievalScheduler.dispose();
+    }
+
+    /**
+     * 基于知识库的流式问答
+     *
+     * @param provider   模型提供方，如ollama、openai，用于划分问答缓存
+     * @param model      模型名称
+     * @param ragTags    知识库标签，多个标签时并行检索后合并
+     * @param message    用户问题
+     * @param tuning     本次向量检索的索引查询参数，如ef_search、probes
+     * @param chatStream 按组装好的消息调用模型流式生成
+     * @return 流式回答
+     */
+    public Flux<ChatResponse> generateStream(String provider, String model, List<String> ragTags, String message, RetrievalTuning tuning,
+                                             Function<List<Message>, Flux<ChatResponse>> chatStream) {
+        List<String> tags = ragTags.stream().filter(StringUtils::isNotBlank).map(String::trim).distinct().toList();
+        if (tags.isEmpty()) {
+            return Flux.error(new IllegalArgumentException("ragTag不能为空"));
+        }
+        if (!tuning.isValid()) {
+            return Flux.error(new IllegalArgumentException("检索参数无效，efSearch取值1~1000，probes与candidateMultiplier须大于0"));
+        }
+        return Mono.fromCallable(() -> semanticAnswerCache.lookup(provider, model, tags, message))
+                .subscribeOn(retrievalScheduler)
+                // 缓存只是加速手段，查找过慢时按未命中继续
+                .timeout(Duration.ofMillis(properties.getCacheLookupTimeoutMillis()), Mono.just(SemanticAnswerCache.Lookup.DISABLED))
+                .flatMapMany(lookup -> {
+                    // 相同或近似的问题直接回放缓存的回答
+                    if (lookup.hit()) {
+                        return semanticAnswerCache.replay(lookup);
+                    }
+                    return retrieve(tags, message, tuning)
+                            .timeout(Duration.ofMillis(properties.getRetrievalTimeoutMillis()))
+                            .doOnError(e -> log.error("知识库检索失败 ragTag:{} model:{}", tags, model, e))
+                            .map(documents -> buildMessages(model, message, documents))
+                            .flatMapMany(messages -> semanticAnswerCache.record(lookup, chatStream.apply(messages)));
+                });
+    }
+
+    /**
+     * 每个知识库标签各自在检索调度器上并行检索，超出单标签时间预算的标签被放弃，不拖慢整体回答；
+     * 结果按得分合并为全局topK，全部标签都失败时返回错误；启用上下文装填时topK为候选片段数
+     */
+    private Mono<List<Document>> retrieve(List<String> ragTags, String message, RetrievalTuning tuning) {
+        int topK = contextProperties.isEnabled()
+                ? Math.max(contextProperties.getCandidates(), hybridProperties.getTopK())
+                : hybridProperties.getTopK();
+        return Flux.fromIterable(ragTags)
+                .flatMap(ragTag -> Mono.fromCallable(() -> hybridRetriever.retrieve(message, ragTag, topK, tuning))
+                        .subscribeOn(retrievalScheduler)
+                        .timeout(Duration.ofMillis(properties.getPerTagTimeoutMillis()))
+                        .onErrorResume(e -> {
+                            log.warn("知识库检索超时或失败，忽略该标签 ragTag:{} {}", ragTag, e.toString());
+                            return Mono.empty();
+                        }))
+                .collectList()
+                .flatMap(results -> results.isEmpty()
+                        ? Mono.error(new IllegalStateException("知识库检索全部失败 " + ragTags))
+                        : Mono.just(merge(results, topK)));
+    }
+
+    /**
+     * 合并各标签的检索结果：混合检索时按融合得分、否则按向量距离排序，取全局topK
+     */
+    private List<Document> merge(List<List<Document>> results, int topK) {
+        if (results.size() == 1) {
+            return results.get(0);
+        }
+        return results.stream()
+                .flatMap(List::stream)
+                .sorted(Comparator.comparingDouble(RagChatService::score).reversed())
+                .limit(topK)
+                .toList();
+    }
+
+    private static double score(Document document) {
+        Object rrfScore = document.getMetadata().get("rrf_score");
+        if (rrfScore instanceof Number number) {
+            return number.doubleValue();
+        }
+        Object distance = document.getMetadata().get("distance");
+        return distance instanceof Number number ? -number.doubleValue() : Double.NEGATIVE_INFINITY;
+    }
+
+    private List<Message> buildMessages(String model, String message, List<Document> documents) {
+        String documentCollectors = contextProperties.isEnabled()
+                ? contextPacker.pack(model, documents).text()
+                : documents.stream().map(Document::getContent).collect(Collectors.joining());
+        Message ragMessage = new SystemPromptTemplate(SYSTEM_PROMPT).createMessage(Map.of("documents", documentCollectors));
+
+        List<Message> messages = new ArrayList<>();
+        messages.add(new UserMessage(message));
+        messages.add(ragMessage);
+        return messages;
+    }
+
+}
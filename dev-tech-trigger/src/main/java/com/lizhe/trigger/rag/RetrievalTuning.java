@@ -0,0 +1,31 @@
+package com.lizhe.trigger.rag;
+
+/**
+ * 单次检索的索引查询参数，为空的参数使用 {@link VectorIndexProperties} 中的配置值
+ * <p>
+ * 只影响本次检索的召回率与耗时，问答缓存和相同请求合并不区分检索参数。
+ * </p>
+ *
+ * @param efSearch            HNSW查询候选列表大小，取值1~1000，实际取值不小于候选数
+ * @param probes              IVFFlat探测的聚类数，须大于0
+ * @param candidateMultiplier 压缩检索时的候选倍数，须大于0
+ * @author 李哲
+ * @since 1.0
+ */
+public record RetrievalTuning(Integer efSearch, Integer probes, Integer candidateMultiplier) {
+
+    /**
+     * 全部使用配置值
+     */
+    public static final RetrievalTuning DEFAULT = new RetrievalTuning(null, null, null);
+
+    /**
+     * 参数是否在pgvector允许的范围内
+     */
+    public boolean isValid() {
+        return (efSearch == null || (efSearch >= 1 && efSearch <= 1000))
+                && (probes == null || probes >= 1)
+                && (candidateMultiplier == null || candidateMultiplier >= 1);
+    }
+
+}
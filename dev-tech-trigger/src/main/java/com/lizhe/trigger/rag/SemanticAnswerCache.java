@@ -0,0 +1,266 @@
+package com.lizhe.trigger.rag;
+
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RBatch;
+import org.redisson.api.RList;
+import org.redisson.api.RListAsync;
+import org.redisson.api.RedissonClient;
+import org.springframework.ai.chat.ChatResponse;
+import org.springframework.ai.chat.Generation;
+import org.springframework.ai.chat.metadata.ChatGenerationMetadata;
+import org.springframework.ai.embedding.EmbeddingClient;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * 知识库问答语义缓存
+ * <p>
+ * 按 模型 + 知识库标签组合 划分缓存范围，以问题向量的余弦相似度匹配相同或近似的问题，命中时直接回放缓存的回答，
+ * 省去向量检索和模型生成。缓存条目持久化在Redis列表中，各节点在本地保留一份副本用于相似度比较。
+ * </p>
+ * <p>
+ * 每个知识库标签维护一个代数计数器，缓存键中包含代数。标签有新的导入写入时代数加一，
+ * 旧代数的缓存不再被读取并随过期时间自动清理。
+ * </p>
+ *
+ * @author 李哲
+ * @since 1.0
+ */
+@Slf4j
+@Component
+public class SemanticAnswerCache {
+
+    private static final String ENTRIES_KEY_PREFIX = "ragAnswerCache:";
+    private static final String GENERATION_KEY_PREFIX = "ragAnswerCacheGeneration:";
+    /**
+     * 本地副本的刷新间隔，用于获取其他节点写入的条目
+     */
+    private static final long LOCAL_RELOAD_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    @Resource
+    private RedissonClient redissonClient;
+    @Resource(name = "ragEmbeddingClient")
+    private EmbeddingClient embeddingClient;
+    @Resource
+    private AnswerCacheProperties properties;
+
+    private final Map<String, LocalScope> scopes = new ConcurrentHashMap<>();
+
+    /**
+     * 查找缓存的回答
+     *
+     * @param provider 模型提供方，如ollama、openai
+     * @param model    模型名称
+     * @param ragTags  知识库标签，多个标签时任一标签失效都会使缓存失效
+     * @param question 用户问题
+     * @return 查找结果，未启用缓存或查找失败时返回不记录的结果
+     */
+    public Lookup lookup(String provider, String model, Collection<String> ragTags, String question) {
+        if (!properties.isEnabled()) {
+            return Lookup.DISABLED;
+        }
+        try {
+            Map<String, Long> generations = new TreeMap<>();
+            for (String ragTag : ragTags) {
+                generations.put(ragTag, redissonClient.getAtomicLong(GENERATION_KEY_PREFIX + ragTag).get());
+            }
+            String scopeKey = ENTRIES_KEY_PREFIX + generations.entrySet().stream()
+                    .map(entry -> entry.getKey() + ":" + entry.getValue())
+                    .collect(Collectors.joining(",")) + ":" + provider + ":" + model;
+            // 问题向量经过向量化缓存，随后的知识库检索会直接命中同一向量
+            float[] embedding = normalize(embeddingClient.embed(question));
+            AnswerCacheEntry entry = scope(generations, scopeKey).nearest(embedding, properties.getSimilarityThreshold());
+            if (entry != null) {
+                log.info("问答缓存命中 ragTag:{} model:{} question:{} cached:{}", ragTags, model, question, entry.getQuestion());
+            }
+            return new Lookup(scopeKey, question, embedding, entry);
+        } catch (Exception e) {
+            log.warn("问答缓存查找失败，直接生成回答 ragTag:{} {}", ragTags, e.getMessage());
+            return Lookup.DISABLED;
+        }
+    }
+
+    /**
+     * 以流式片段回放缓存的回答，最后一个片段携带结束标记
+     */
+    public Flux<ChatResponse> replay(Lookup lookup) {
+        String answer = lookup.entry().getAnswer();
+        int chunkChars = Math.max(1, properties.getReplayChunkChars());
+        List<ChatResponse> responses = new ArrayList<>();
+        int start = 0;
+        while (start < answer.length()) {
+            int end = Math.min(answer.length(), start + chunkChars);
+            // 不拆分代理对
+            if (end < answer.length() && end - start > 1 && Character.isHighSurrogate(answer.charAt(end - 1))) {
+                end--;
+            }
+            String text = answer.substring(start, end);
+            Generation generation = end == answer.length()
+                    ? new Generation(text, Map.of("finishReason", "STOP")).withGenerationMetadata(ChatGenerationMetadata.from("stop", null))
+                    : new Generation(text);
+            responses.add(new ChatResponse(List.of(generation)));
+            start = end;
+        }
+        return Flux.fromIterable(responses);
+    }
+
+    /**
+     * 包装模型的流式输出，正常结束时将完整回答写入缓存；出错或客户端取消时不写入
+     */
+    public Flux<ChatResponse> record(Lookup lookup, Flux<ChatResponse> stream) {
+        if (lookup.scopeKey() == null) {
+            return stream;
+        }
+        StringBuilder answer = new StringBuilder();
+        return stream
+                .doOnNext(response -> {
+                    if (response.getResult() != null && response.getResult().getOutput() != null
+                            && response.getResult().getOutput().getContent() != null) {
+                        answer.append(response.getResult().getOutput().getContent());
+                    }
+                })
+                .doOnComplete(() -> {
+                    if (!answer.isEmpty()) {
+                        put(lookup, answer.toString());
+                    }
+                });
+    }
+
+    /**
+     * 使知识库标签下所有模型的缓存失效
+     *
+     * @param ragTag 知识库标签
+     */
+    public void invalidate(String ragTag) {
+        try {
+            long generation = redissonClient.getAtomicLong(GENERATION_KEY_PREFIX + ragTag).incrementAndGet();
+            scopes.values().removeIf(scope -> scope.generations.containsKey(ragTag));
+            log.info("问答缓存失效 ragTag:{} generation:{}", ragTag, generation);
+        } catch (Exception e) {
+            log.error("问答缓存失效失败 ragTag:{}", ragTag, e);
+        }
+    }
+
+    private void put(Lookup lookup, String answer) {
+        AnswerCacheEntry entry = new AnswerCacheEntry(lookup.question(), lookup.embedding(), answer, System.currentTimeMillis());
+        LocalScope scope = scopes.get(lookup.scopeKey());
+        if (scope != null) {
+            scope.add(entry, properties.getMaxEntriesPerScope());
+        }
+        try {
+            RBatch batch = redissonClient.createBatch();
+            RListAsync<AnswerCacheEntry> list = batch.getList(lookup.scopeKey());
+            list.addAsync(entry);
+            list.trimAsync(-properties.getMaxEntriesPerScope(), -1);
+            list.expireAsync(Duration.ofHours(properties.getTtlHours()));
+            batch.executeAsync();
+        } catch (Exception e) {
+            log.warn("问答缓存写入失败 {} {}", lookup.scopeKey(), e.getMessage());
+        }
+    }
+
+    private LocalScope scope(Map<String, Long> generations, String scopeKey) {
+        // 标签代数变化说明其他节点已使缓存失效，丢弃本地包含该标签旧代数的副本
+        scopes.values().removeIf(scope -> generations.entrySet().stream().anyMatch(entry -> {
+            Long generation = scope.generations.get(entry.getKey());
+            return generation != null && !generation.equals(entry.getValue());
+        }));
+        LocalScope scope = scopes.get(scopeKey);
+        if (scope == null || System.currentTimeMillis() - scope.loadTime > LOCAL_RELOAD_MILLIS) {
+            RList<AnswerCacheEntry> list = redissonClient.getList(scopeKey);
+            scope = new LocalScope(generations, list.readAll());
+            scopes.put(scopeKey, scope);
+        }
+        return scope;
+    }
+
+    private static float[] normalize(List<Double> vector) {
+        float[] normalized = new float[vector.size()];
+        double norm = 0;
+        for (Double value : vector) {
+            norm += value * value;
+        }
+        norm = Math.sqrt(norm);
+        for (int i = 0; i < normalized.length; i++) {
+            normalized[i] = norm == 0 ? 0 : (float) (vector.get(i) / norm);
+        }
+        return normalized;
+    }
+
+    /**
+     * 缓存查找结果
+     *
+     * @param scopeKey  缓存范围键，为null表示不记录
+     * @param question  用户问题
+     * @param embedding 归一化的问题向量
+     * @param entry     命中的缓存条目，未命中为null
+     */
+    public record Lookup(String scopeKey, String question, float[] embedding, AnswerCacheEntry entry) {
+
+        static final Lookup DISABLED = new Lookup(null, null, null, null);
+
+        public boolean hit() {
+            return entry != null;
+        }
+
+    }
+
+    /**
+     * 本地缓存副本，写入远少于读取，使用写时复制列表
+     */
+    private static class LocalScope {
+
+        /**
+         * 缓存范围包含的知识库标签及其代数
+         */
+        private final Map<String, Long> generations;
+        private final long loadTime = System.currentTimeMillis();
+        private final List<AnswerCacheEntry> entries;
+
+        private LocalScope(Map<String, Long> generations, List<AnswerCacheEntry> entries) {
+            this.generations = generations;
+            this.entries = new CopyOnWriteArrayList<>(entries);
+        }
+
+        private AnswerCacheEntry nearest(float[] embedding, double threshold) {
+            AnswerCacheEntry best = null;
+            double bestScore = threshold;
+            for (AnswerCacheEntry entry : entries) {
+                float[] cached = entry.getEmbedding();
+                if (cached == null || cached.length != embedding.length) {
+                    continue;
+                }
+                double score = 0;
+                for (int i = 0; i < embedding.length; i++) {
+                    score += embedding[i] * cached[i];
+                }
+                if (score >= bestScore) {
+                    best = entry;
+                    bestScore = score;
+                }
+            }
+            return best;
+        }
+
+        private void add(AnswerCacheEntry entry, int maxEntries) {
+            entries.add(entry);
+            while (entries.size() > maxEntries) {
+                entries.remove(0);
+            }
+        }
+
+    }
+
+}
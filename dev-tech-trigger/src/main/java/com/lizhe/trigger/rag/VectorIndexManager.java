@@ -0,0 +1,238 @@
+package com.lizhe.trigger.rag;
+
+import com.lizhe.dev.tech.api.dto.VectorIndexDTO;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Statement;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * pgvector近似最近邻索引管理
+ * <p>
+ * 启动时索引不存在则在后台以 {@code CREATE INDEX CONCURRENTLY} 创建，不阻塞写入。
+ * 批量导入后可手动触发重建：先以临时名称并发构建新索引，构建完成后在一个事务内删除旧索引并重命名，
+ * 重建期间查询继续使用旧索引。分区存储模式下对每个分区分别处理。
+ * </p>
+ * <p>
+ * 索引构建和其他组件提交的表结构迁移（如全文检索列）在同一个后台维护线程上依次执行，不阻塞启动，也不会同时对同一张表加锁。
+ * </p>
+ *
+ * @author 李哲
+ * @since 1.0
+ */
+@Slf4j
+@Component
+public class VectorIndexManager {
+
+    public static final String INDEX_NAME = "vector_store_embedding_idx";
+    private static final String REBUILD_SUFFIX = "_rebuild";
+
+    @Resource
+    private JdbcTemplate jdbcTemplate;
+    @Resource
+    private TransactionTemplate transactionTemplate;
+    @Resource
+    private VectorIndexProperties properties;
+    @Resource
+    private VectorStorageLayout layout;
+    @Resource
+    private VectorRetriever vectorRetriever;
+
+    private final ExecutorService maintenance = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "rag-vector-index");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicBoolean building = new AtomicBoolean();
+    private volatile Date lastBuildTime;
+    private volatile long lastBuildMillis;
+    private volatile String lastError;
+
+    @PostConstruct
+    public void init() {
+        if (properties.getType() == VectorIndexProperties.IndexType.NONE) {
+            log.info("向量索引未启用");
+            return;
+        }
+        List<VectorStorageLayout.IndexTarget> missing = layout.indexTargets().stream()
+                .filter(target -> indexDefinition(target.indexName()) == null)
+                .toList();
+        if (missing.isEmpty()) {
+            return;
+        }
+        if (properties.isBuildOnStartup()) {
+            startBuild(missing);
+        } else {
+            log.warn("向量索引不存在 {}，相似度检索将退化为顺序扫描，可通过管理接口创建", missing);
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        maintenance.shutdownNow();
+    }
+
+    /**
+     * 在后台维护线程上执行表结构迁移，与索引构建依次执行
+     *
+     * @param name      迁移名称，用于日志
+     * @param migration 迁移任务，须自行保证重复执行无副作用
+     */
+    public void submitMigration(String name, Runnable migration) {
+        maintenance.execute(() -> {
+            long start = System.currentTimeMillis();
+            try {
+                migration.run();
+                log.info("表结构迁移完成 {} 耗时:{}ms", name, System.currentTimeMillis() - start);
+            } catch (Exception e) {
+                log.error("表结构迁移失败 {}，下次启动时重试", name, e);
+            }
+        });
+    }
+
+    /**
+     * 在后台并发创建或重建索引，已有构建进行中时直接返回当前状态
+     *
+     * @return 索引状态
+     */
+    public VectorIndexDTO rebuild() {
+        if (properties.getType() == VectorIndexProperties.IndexType.NONE) {
+            return status();
+        }
+        startBuild(layout.indexTargets());
+        return status();
+    }
+
+    private void startBuild(List<VectorStorageLayout.IndexTarget> targets) {
+        if (!building.compareAndSet(false, true)) {
+            log.info("向量索引正在构建中，忽略本次请求");
+            return;
+        }
+        maintenance.execute(() -> {
+            long start = System.currentTimeMillis();
+            lastBuildTime = new Date(start);
+            lastError = null;
+            try {
+                for (VectorStorageLayout.IndexTarget target : targets) {
+                    build(target);
+                }
+                lastBuildMillis = System.currentTimeMillis() - start;
+                log.info("向量索引构建完成 耗时:{}ms", lastBuildMillis);
+            } catch (Exception e) {
+                lastBuildMillis = System.currentTimeMillis() - start;
+                lastError = e.getMessage();
+                log.error("向量索引构建失败", e);
+            } finally {
+                building.set(false);
+            }
+        });
+    }
+
+    /**
+     * 查询索引状态
+     */
+    public VectorIndexDTO status() {
+        List<VectorStorageLayout.IndexTarget> targets = layout.indexTargets();
+        List<String> definitions = targets.stream()
+                .map(target -> indexDefinition(target.indexName()))
+                .filter(Objects::nonNull)
+                .toList();
+        String definition = definitions.isEmpty() ? null : String.join("; ", definitions);
+        String state;
+        if (properties.getType() == VectorIndexProperties.IndexType.NONE) {
+            state = "DISABLED";
+        } else if (building.get()) {
+            state = "BUILDING";
+        } else if (lastError != null) {
+            state = "FAILED";
+        } else {
+            state = definition == null ? "MISSING" : "READY";
+        }
+        long indexBytes = 0;
+        long tableBytes = 0;
+        for (VectorStorageLayout.IndexTarget target : targets) {
+            indexBytes += relationSize(target.indexName());
+            tableBytes += relationSize(target.table());
+        }
+        Map<String, Object> searchStats = vectorRetriever.stats();
+        return VectorIndexDTO.builder()
+                .indexType(properties.getType().name())
+                .quantization(properties.getQuantization().name())
+                .indexBytes(indexBytes)
+                .tableBytes(tableBytes)
+                .searches((Long) searchStats.get("searches"))
+                .avgSearchMillis((Double) searchStats.get("avgSearchMillis"))
+                .indexName(layout.isPartitioned() ? VectorStorageLayout.PARTITIONED_TABLE + " partitions" : INDEX_NAME)
+                .definition(definition)
+                .state(state)
+                .lastBuildTime(lastBuildTime)
+                .lastBuildMillis(lastBuildMillis)
+                .lastError(lastError)
+                .build();
+    }
+
+    private void build(VectorStorageLayout.IndexTarget target) {
+        String rebuildName = target.indexName() + REBUILD_SUFFIX;
+        // 清理上次失败遗留的无效索引
+        jdbcTemplate.execute("DROP INDEX CONCURRENTLY IF EXISTS " + rebuildName);
+
+        boolean replace = indexDefinition(target.indexName()) != null;
+        String createSql = layout.createIndexSql(target.table(), replace ? rebuildName : target.indexName(), true);
+        log.info("开始构建向量索引 {}", createSql);
+
+        // 会话级参数只对当前连接生效，构建完成后复位，避免影响连接池中的其他请求
+        jdbcTemplate.execute((ConnectionCallback<Void>) con -> {
+            try (Statement statement = con.createStatement()) {
+                if (StringUtils.isNotBlank(properties.getMaintenanceWorkMem())) {
+                    statement.execute("SET maintenance_work_mem = '" + properties.getMaintenanceWorkMem().replace("'", "") + "'");
+                }
+                if (properties.getParallelWorkers() > 0) {
+                    statement.execute("SET max_parallel_maintenance_workers = " + properties.getParallelWorkers());
+                }
+                try {
+                    statement.execute(createSql);
+                } finally {
+                    statement.execute("RESET maintenance_work_mem");
+                    statement.execute("RESET max_parallel_maintenance_workers");
+                }
+            }
+            return null;
+        });
+
+        if (replace) {
+            transactionTemplate.executeWithoutResult(status -> {
+                jdbcTemplate.execute("DROP INDEX IF EXISTS " + target.indexName());
+                jdbcTemplate.execute("ALTER INDEX " + rebuildName + " RENAME TO " + target.indexName());
+            });
+        }
+    }
+
+    /**
+     * 关系占用空间，关系不存在时为0；表的空间含TOAST，不含索引
+     */
+    private long relationSize(String relation) {
+        Long size = jdbcTemplate.queryForObject("SELECT COALESCE(pg_table_size(to_regclass(?)), 0)", Long.class, relation);
+        return size == null ? 0 : size;
+    }
+
+    private String indexDefinition(String indexName) {
+        List<String> definitions = jdbcTemplate.queryForList(
+                "SELECT indexdef FROM pg_indexes WHERE indexname = ?", String.class, indexName);
+        return definitions.isEmpty() ? null : definitions.get(0);
+    }
+
+}
@@ -0,0 +1,73 @@
+package com.lizhe.trigger.rag;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 向量索引配置
+ *
+ * @author 李哲
+ * @since 1.0
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "rag.vector-index", ignoreInvalidFields = true)
+public class VectorIndexProperties {
+
+    /**
+     * 索引类型：HNSW、IVFFLAT、NONE，默认为HNSW
+     */
+    private IndexType type = IndexType.HNSW;
+    /**
+     * 启动时索引不存在是否自动后台创建，默认为true
+     */
+    private boolean buildOnStartup = true;
+    /**
+     * HNSW每个节点的最大连接数，默认为16
+     */
+    private int m = 16;
+    /**
+     * HNSW构建时的候选列表大小，默认为64
+     */
+    private int efConstruction = 64;
+    /**
+     * HNSW查询时的候选列表大小，检索调用未指定时使用，默认为40
+     */
+    private int efSearch = 40;
+    /**
+     * IVFFlat的聚类中心数，建议为 行数/1000（百万行以内），默认为100
+     */
+    private int lists = 100;
+    /**
+     * IVFFlat查询时探测的聚类数，检索调用未指定时使用，默认为10
+     */
+    private int probes = 10;
+    /**
+     * 索引中向量的压缩方式：NONE 原始精度；HALFVEC 半精度标量量化；BINARY 按符号位二值量化，默认为NONE。
+     * 启用压缩时索引建立在压缩后的向量上，检索先按压缩向量召回候选，再用原始向量精确重排；修改后需重建索引。
+     * HALFVEC和BINARY需要pgvector 0.7.0及以上，版本过低时应用拒绝启动
+     */
+    private Quantization quantization = Quantization.NONE;
+    /**
+     * 压缩检索时的候选倍数，候选数 = topK × 倍数，倍数越大召回率越高、重排开销越大，默认为10
+     */
+    private int rerankCandidateMultiplier = 10;
+    /**
+     * 构建索引时的 maintenance_work_mem，为空表示使用数据库默认值
+     */
+    private String maintenanceWorkMem;
+    /**
+     * 构建索引时的 max_parallel_maintenance_workers，0表示使用数据库默认值
+     */
+    private int parallelWorkers = 0;
+
+    public enum IndexType {
+        HNSW, IVFFLAT, NONE
+    }
+
+    public enum Quantization {
+        NONE, HALFVEC, BINARY
+    }
+
+}
@@ -0,0 +1,157 @@
+package com.lizhe.trigger.rag;
+
+import com.alibaba.fastjson.JSON;
+import com.pgvector.PGvector;
+import jakarta.annotation.Resource;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingClient;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 知识库向量检索
+ * <p>
+ * 与 {@code PgVectorStore.similaritySearch} 使用相同的余弦距离，但按调用设置索引的查询参数：
+ * HNSW的 {@code hnsw.ef_search} 与IVFFlat的 {@code ivfflat.probes} 通过 {@code set_config(..., true)}
+ * 只在本次检索的事务内生效，不会残留在连接池的连接上。
+ * </p>
+ * <p>
+ * 索引启用压缩时分两阶段检索：先按索引中的压缩向量召回 topK × 候选倍数 个候选，
+ * 再用表中原始精度向量计算余弦距离重排取前topK个。
+ * </p>
+ *
+ * @author 李哲
+ * @since 1.0
+ */
+@Component
+public class VectorRetriever {
+
+    @Resource
+    private JdbcTemplate jdbcTemplate;
+    @Resource
+    private TransactionTemplate transactionTemplate;
+    @Resource(name = "ragEmbeddingClient")
+    private EmbeddingClient embeddingClient;
+    @Resource
+    private VectorIndexProperties indexProperties;
+    @Resource
+    private VectorStorageLayout layout;
+
+    private final LongAdder searches = new LongAdder();
+    private final LongAdder searchNanos = new LongAdder();
+
+    /**
+     * 使用默认索引查询参数检索
+     *
+     * @param query  检索问题
+     * @param ragTag 知识库标签
+     * @param topK   返回的片段数
+     * @return 按距离升序排列的文档片段，元数据中包含distance
+     */
+    public List<Document> retrieve(String query, String ragTag, int topK) {
+        return retrieve(new RetrievalRequest(query, ragTag, topK, RetrievalTuning.DEFAULT));
+    }
+
+    /**
+     * 检索知识库
+     *
+     * @param request 检索请求
+     * @return 按距离升序排列的文档片段，元数据中包含distance
+     */
+    public List<Document> retrieve(RetrievalRequest request) {
+        long start = System.nanoTime();
+        PGvector embedding = new PGvector(toFloatArray(embeddingClient.embed(request.query())));
+        VectorIndexProperties.Quantization quantization = indexProperties.getQuantization();
+        RetrievalTuning tuning = request.tuning();
+        int candidates = quantization == VectorIndexProperties.Quantization.NONE ? request.topK()
+                : request.topK() * (tuning.candidateMultiplier() != null ? tuning.candidateMultiplier() : indexProperties.getRerankCandidateMultiplier());
+        // HNSW每次最多返回ef_search个结果，需不小于候选数
+        int efSearch = Math.max(tuning.efSearch() != null ? tuning.efSearch() : indexProperties.getEfSearch(), candidates);
+        int probes = tuning.probes() != null ? tuning.probes() : indexProperties.getProbes();
+
+        List<Document> documents = transactionTemplate.execute(status -> {
+            switch (indexProperties.getType()) {
+                case HNSW -> jdbcTemplate.queryForObject("SELECT set_config('hnsw.ef_search', ?, true)", String.class, String.valueOf(efSearch));
+                case IVFFLAT -> jdbcTemplate.queryForObject("SELECT set_config('ivfflat.probes', ?, true)", String.class, String.valueOf(probes));
+                default -> {
+                }
+            }
+            // 分区模式下按分区键过滤，只访问该标签的分区及其索引
+            if (quantization == VectorIndexProperties.Quantization.NONE) {
+                String sql = "SELECT id, content, metadata, embedding <=> ? AS distance FROM " + layout.table()
+                        + " WHERE " + layout.tagPredicate() + " ORDER BY embedding <=> ? LIMIT ?";
+                return jdbcTemplate.query(sql, this::mapDocument, embedding, request.ragTag(), embedding, request.topK());
+            }
+            // 第一阶段按压缩向量从索引召回候选，第二阶段用原始精度向量计算余弦距离重排
+            String sql = "SELECT id, content, metadata, embedding <=> ? AS distance FROM ("
+                    + "SELECT id, content, metadata, embedding FROM " + layout.table()
+                    + " WHERE " + layout.tagPredicate() + " ORDER BY " + candidateOrder(quantization) + " LIMIT ?"
+                    + ") candidates ORDER BY distance LIMIT ?";
+            return jdbcTemplate.query(sql, this::mapDocument, embedding, request.ragTag(), embedding, candidates, request.topK());
+        });
+
+        searches.increment();
+        searchNanos.add(System.nanoTime() - start);
+        return documents;
+    }
+
+    /**
+     * 检索统计
+     *
+     * @return 检索次数及平均耗时（单位：毫秒，含问题向量化）
+     */
+    public Map<String, Object> stats() {
+        long count = searches.sum();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("searches", count);
+        stats.put("avgSearchMillis", count == 0 ? 0.0 : searchNanos.sum() / 1_000_000.0 / count);
+        return stats;
+    }
+
+    /**
+     * 候选阶段的排序表达式，须与索引表达式一致才能使用索引
+     */
+    private String candidateOrder(VectorIndexProperties.Quantization quantization) {
+        int dimensions = layout.dimensions();
+        return switch (quantization) {
+            case HALFVEC -> "embedding::halfvec(" + dimensions + ") <=> ?::halfvec(" + dimensions + ")";
+            case BINARY -> "binary_quantize(embedding)::bit(" + dimensions + ") <~> binary_quantize(?::vector)::bit(" + dimensions + ")";
+            case NONE -> "embedding <=> ?";
+        };
+    }
+
+    private Document mapDocument(ResultSet rs, int rowNum) throws SQLException {
+        Map<String, Object> metadata = new HashMap<>(JSON.parseObject(rs.getString("metadata")));
+        metadata.put("distance", rs.getFloat("distance"));
+        return new Document(rs.getString("id"), rs.getString("content"), metadata);
+    }
+
+    static float[] toFloatArray(List<Double> embedding) {
+        float[] floats = new float[embedding.size()];
+        for (int i = 0; i < embedding.size(); i++) {
+            floats[i] = embedding.get(i).floatValue();
+        }
+        return floats;
+    }
+
+    /**
+     * 检索请求
+     *
+     * @param query  检索问题
+     * @param ragTag 知识库标签
+     * @param topK   返回的片段数
+     * @param tuning 本次检索的索引查询参数
+     */
+    public record RetrievalRequest(String query, String ragTag, int topK, RetrievalTuning tuning) {
+    }
+
+}
@@ -0,0 +1,264 @@
+package com.lizhe.trigger.rag;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.vectorstore.PgVectorStore;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 向量存储布局
+ * <p>
+ * SHARED模式下所有知识库共用 PgVectorStore 创建的 vector_store 表，按元数据中的knowledge字段过滤。
+ * PARTITIONED模式下使用以knowledge列做LIST分区的 vector_store_partitioned 表，每个知识库标签一个分区，
+ * 分区各自建立向量索引：按标签检索时分区裁剪只访问该标签的数据和索引，删除标签只需删除分区表。
+ * </p>
+ * <p>
+ * 向量压缩依赖 pgvector 0.7.0 引入的 halfvec、binary_quantize 和 bit_hamming_ops，启动时检查扩展版本，版本过低时拒绝启动。
+ * </p>
+ *
+ * @author 李哲
+ * @since 1.0
+ */
+@Slf4j
+@Component
+public class VectorStorageLayout {
+
+    public static final String SHARED_TABLE = "vector_store";
+    public static final String PARTITIONED_TABLE = "vector_store_partitioned";
+    private static final String PARTITION_PREFIX = "vector_store_p_";
+    private static final String INDEX_SUFFIX = "_embedding_idx";
+    /**
+     * 支持向量压缩的最低 pgvector 版本
+     */
+    private static final int[] QUANTIZATION_MIN_VERSION = {0, 7, 0};
+
+    @Resource
+    private JdbcTemplate jdbcTemplate;
+    @Resource
+    private TransactionTemplate transactionTemplate;
+    @Resource
+    private VectorStorageProperties properties;
+    @Resource
+    private VectorIndexProperties indexProperties;
+    /**
+     * 依赖向量库Bean，保证 vector_store 表已创建，分区表沿用其向量维度
+     */
+    @Resource
+    private PgVectorStore pgVectorStore;
+
+    private final Set<String> knownPartitions = ConcurrentHashMap.newKeySet();
+    private volatile Integer dimensions;
+
+    @PostConstruct
+    public void init() {
+        checkQuantizationSupport();
+        if (!isPartitioned()) {
+            return;
+        }
+        int dimensions = dimensions();
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + PARTITIONED_TABLE + " ("
+                + "knowledge text NOT NULL, "
+                + "id uuid NOT NULL, "
+                + "content text, "
+                + "metadata json, "
+                + "embedding vector(" + dimensions + "), "
+                + "PRIMARY KEY (knowledge, id)"
+                + ") PARTITION BY LIST (knowledge)");
+        knownPartitions.addAll(partitionTables());
+        log.info("向量存储使用分区模式 维度:{} 已有分区:{}", dimensions, knownPartitions.size());
+    }
+
+    public boolean isPartitioned() {
+        return properties.getMode() == VectorStorageProperties.Mode.PARTITIONED;
+    }
+
+    /**
+     * 读写使用的表名，分区模式下为分区父表
+     */
+    public String table() {
+        return isPartitioned() ? PARTITIONED_TABLE : SHARED_TABLE;
+    }
+
+    /**
+     * 按知识库标签过滤的条件，含一个标签参数占位符；分区模式下按分区键过滤以触发分区裁剪
+     */
+    public String tagPredicate() {
+        return isPartitioned() ? "knowledge = ?" : "metadata->>'knowledge' = ?";
+    }
+
+    /**
+     * 确保知识库标签的分区存在，首次创建时迁入共用表中的已有数据并建立向量索引；共用模式下无操作
+     *
+     * @param ragTag 知识库标签
+     */
+    public void ensurePartition(String ragTag) {
+        if (!isPartitioned()) {
+            return;
+        }
+        String partition = partitionName(ragTag);
+        if (knownPartitions.contains(partition)) {
+            return;
+        }
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + partition + " PARTITION OF " + PARTITIONED_TABLE
+                        + " FOR VALUES IN (" + quote(ragTag) + ")");
+                if (properties.isBackfillFromShared()) {
+                    int moved = jdbcTemplate.update("INSERT INTO " + partition + " (knowledge, id, content, metadata, embedding) "
+                            + "SELECT ?, id, content, metadata, embedding FROM " + SHARED_TABLE + " WHERE metadata->>'knowledge' = ? "
+                            + "ON CONFLICT DO NOTHING", ragTag, ragTag);
+                    if (moved > 0) {
+                        jdbcTemplate.update("DELETE FROM " + SHARED_TABLE + " WHERE metadata->>'knowledge' = ?", ragTag);
+                        log.info("知识库 {} 已从共用表迁入分区 {} 片段数:{}", ragTag, partition, moved);
+                    }
+                }
+                // 新分区数据量小，直接建索引
+                String indexSql = createIndexSql(partition, partition + INDEX_SUFFIX, false);
+                if (indexSql != null) {
+                    jdbcTemplate.execute(indexSql);
+                }
+            });
+        } catch (Exception e) {
+            // 其他节点并发创建同一分区时以已存在的分区为准
+            if (!partitionTables().contains(partition)) {
+                throw e;
+            }
+        }
+        knownPartitions.add(partition);
+        log.info("知识库 {} 分区已就绪 {}", ragTag, partition);
+    }
+
+    /**
+     * 删除知识库标签的全部向量数据；分区模式下删除分区表，共用模式下按标签删除行
+     *
+     * @param ragTag 知识库标签
+     */
+    public void dropTag(String ragTag) {
+        if (isPartitioned()) {
+            String partition = partitionName(ragTag);
+            jdbcTemplate.execute("DROP TABLE IF EXISTS " + partition);
+            knownPartitions.remove(partition);
+            // 切换模式前留在共用表中的数据一并删除
+            jdbcTemplate.update("DELETE FROM " + SHARED_TABLE + " WHERE metadata->>'knowledge' = ?", ragTag);
+        } else {
+            jdbcTemplate.update("DELETE FROM " + SHARED_TABLE + " WHERE metadata->>'knowledge' = ?", ragTag);
+        }
+        log.info("知识库 {} 向量数据已删除", ragTag);
+    }
+
+    /**
+     * 需要维护向量索引的表：共用模式下为 vector_store，分区模式下为每个分区
+     */
+    public List<IndexTarget> indexTargets() {
+        if (!isPartitioned()) {
+            return List.of(new IndexTarget(SHARED_TABLE, VectorIndexManager.INDEX_NAME));
+        }
+        return partitionTables().stream().map(table -> new IndexTarget(table, table + INDEX_SUFFIX)).toList();
+    }
+
+    /**
+     * 按配置的索引类型和参数生成建索引语句，索引未启用时返回null
+     */
+    String createIndexSql(String table, String indexName, boolean concurrently) {
+        String create = concurrently ? "CREATE INDEX CONCURRENTLY " : "CREATE INDEX IF NOT EXISTS ";
+        return switch (indexProperties.getType()) {
+            case HNSW -> String.format("%s%s ON %s USING hnsw (%s) WITH (m = %d, ef_construction = %d)",
+                    create, indexName, table, indexedColumn(), indexProperties.getM(), indexProperties.getEfConstruction());
+            case IVFFLAT -> String.format("%s%s ON %s USING ivfflat (%s) WITH (lists = %d)",
+                    create, indexName, table, indexedColumn(), indexProperties.getLists());
+            case NONE -> null;
+        };
+    }
+
+    /**
+     * 向量列的维度，与 PgVectorStore 创建的 vector_store 表一致
+     */
+    public int dimensions() {
+        Integer cached = dimensions;
+        if (cached == null) {
+            cached = jdbcTemplate.queryForObject(
+                    "SELECT atttypmod FROM pg_attribute WHERE attrelid = 'vector_store'::regclass AND attname = 'embedding'", Integer.class);
+            dimensions = cached;
+        }
+        return cached;
+    }
+
+    /**
+     * 索引列及操作符类；启用压缩时为表达式索引，索引中只保存压缩后的向量，表中仍保留原始精度向量用于重排
+     */
+    private String indexedColumn() {
+        return switch (indexProperties.getQuantization()) {
+            case NONE -> "embedding vector_cosine_ops";
+            case HALFVEC -> "(embedding::halfvec(" + dimensions() + ")) halfvec_cosine_ops";
+            case BINARY -> "(binary_quantize(embedding)::bit(" + dimensions() + ")) bit_hamming_ops";
+        };
+    }
+
+    /**
+     * 启用向量压缩时校验 pgvector 扩展版本，避免建索引和每次检索都因缺少类型或函数而失败
+     */
+    private void checkQuantizationSupport() {
+        VectorIndexProperties.Quantization quantization = indexProperties.getQuantization();
+        if (quantization == VectorIndexProperties.Quantization.NONE) {
+            return;
+        }
+        List<String> versions = jdbcTemplate.queryForList("SELECT extversion FROM pg_extension WHERE extname = 'vector'", String.class);
+        String version = versions.isEmpty() ? null : versions.get(0);
+        if (version == null || !atLeast(version, QUANTIZATION_MIN_VERSION)) {
+            throw new IllegalStateException("向量压缩方式 " + quantization + " 需要 pgvector 0.7.0 及以上版本，当前版本: "
+                    + (version == null ? "未安装" : version)
+                    + "。请升级数据库镜像并执行 ALTER EXTENSION vector UPDATE，或将 rag.vector-index.quantization 设为 NONE");
+        }
+        log.info("pgvector 版本 {}，启用向量压缩 {}", version, quantization);
+    }
+
+    /**
+     * 比较形如 0.7.4 的版本号
+     */
+    static boolean atLeast(String version, int[] minimum) {
+        String[] parts = version.split("[.\\-]");
+        for (int i = 0; i < minimum.length; i++) {
+            int part = i < parts.length && parts[i].matches("\\d+") ? Integer.parseInt(parts[i]) : 0;
+            if (part != minimum[i]) {
+                return part > minimum[i];
+            }
+        }
+        return true;
+    }
+
+    private List<String> partitionTables() {
+        return jdbcTemplate.queryForList("SELECT c.relname FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid "
+                + "WHERE i.inhparent = '" + PARTITIONED_TABLE + "'::regclass", String.class);
+    }
+
+    private String partitionName(String ragTag) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(ragTag.getBytes(StandardCharsets.UTF_8));
+            return PARTITION_PREFIX + HexFormat.of().formatHex(hash, 0, 8);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not supported", e);
+        }
+    }
+
+    private static String quote(String literal) {
+        return "'" + literal.replace("'", "''") + "'";
+    }
+
+    /**
+     * 向量索引的目标表及索引名
+     */
+    public record IndexTarget(String table, String indexName) {
+    }
+
+}
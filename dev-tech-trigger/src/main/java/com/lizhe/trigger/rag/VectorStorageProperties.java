@@ -0,0 +1,31 @@
+package com.lizhe.trigger.rag;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 向量存储布局配置
+ *
+ * @author 李哲
+ * @since 1.0
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "rag.vector-storage", ignoreInvalidFields = true)
+public class VectorStorageProperties {
+
+    /**
+     * 存储模式：SHARED 所有知识库共用 vector_store 表；PARTITIONED 每个知识库标签一个分区，默认为SHARED
+     */
+    private Mode mode = Mode.SHARED;
+    /**
+     * 分区模式下新建分区时，是否将共用表中该标签的已有数据迁入分区，默认为true
+     */
+    private boolean backfillFromShared = true;
+
+    public enum Mode {
+        SHARED, PARTITIONED
+    }
+
+}
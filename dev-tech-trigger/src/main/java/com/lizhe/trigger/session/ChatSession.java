@@ -0,0 +1,49 @@
+package com.lizhe.trigger.session;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 服务端会话，保存在Redis中
+ *
+ * @author 李哲
+ * @since 1.0
+ */
+@Data
+@NoArgsConstructor
+public class ChatSession implements Serializable {
+
+    /**
+     * 会话ID
+     */
+    private String sessionId;
+    /**
+     * 较早对话的滚动摘要，尚未压缩时为空
+     */
+    private String summary;
+    /**
+     * 已压缩进摘要的对话轮数
+     */
+    private int summarizedTurns;
+    /**
+     * 尚未压缩的对话，按时间顺序排列
+     */
+    private List<ChatTurn> turns = new ArrayList<>();
+    /**
+     * 创建时间戳（单位：毫秒）
+     */
+    private long createTime;
+    /**
+     * 最近一轮对话时间戳（单位：毫秒）
+     */
+    private long updateTime;
+
+    public int historyTokens() {
+        return turns.stream().mapToInt(ChatTurn::getTokens).sum();
+    }
+
+}
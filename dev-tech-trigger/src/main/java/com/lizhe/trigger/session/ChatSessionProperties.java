@@ -0,0 +1,47 @@
+package com.lizhe.trigger.session;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 服务端会话配置
+ *
+ * @author 李哲
+ * @since 1.0
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "chat.session", ignoreInvalidFields = true)
+public class ChatSessionProperties {
+
+    /**
+     * 会话空闲过期时间（单位：小时），每轮对话后重新计时，默认为24
+     */
+    private int ttlHours = 24;
+    /**
+     * 未压缩的历史对话Token数超过该值时，将较早的对话压缩进滚动摘要，默认为3000
+     */
+    private int compactThresholdTokens = 3000;
+    /**
+     * 压缩时保留原文的最近对话轮数，默认为4
+     */
+    private int keepRecentTurns = 4;
+    /**
+     * 滚动摘要的最大字数，默认为800
+     */
+    private int summaryMaxChars = 800;
+    /**
+     * 单次请求中历史对话与摘要的Token上限，压缩未及时完成时从最早的对话开始舍弃，默认为4096
+     */
+    private int maxHistoryTokens = 4096;
+    /**
+     * 会话读写与摘要压缩使用的线程数上限，默认为CPU核数的2倍
+     */
+    private int threads = Runtime.getRuntime().availableProcessors() * 2;
+    /**
+     * 会话线程全忙时可排队的任务数，默认为512
+     */
+    private int queueCapacity = 512;
+
+}
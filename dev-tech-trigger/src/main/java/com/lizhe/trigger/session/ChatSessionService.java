@@ -0,0 +1,299 @@
+package com.lizhe.trigger.session;
+
+import com.lizhe.dev.tech.api.dto.ChatSessionDTO;
+import com.lizhe.trigger.ingest.TokenCounter;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.redisson.api.RBucket;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+import org.springframework.ai.chat.ChatResponse;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+
+/**
+ * 服务端会话
+ * <p>
+ * 会话历史保存在Redis中，客户端每轮只需提交会话ID和新问题。未压缩的历史超过Token阈值后，
+ * 在回答结束后异步调用同一模型把较早的对话压缩进滚动摘要，只保留最近几轮原文，使每轮提示词的大小有上界。
+ * </p>
+ * <p>
+ * 提示词按"固定系统提示词 + 摘要 → 历史对话 → 新问题"的顺序组装，历史原文逐字保存，
+ * 两次压缩之间每轮提示词都是上一轮的前缀延伸，Ollama可以复用已计算的提示词缓存。
+ * </p>
+ *
+ * @author 李哲
+ * @since 1.0
+ */
+@Slf4j
+@Component
+public class ChatSessionService {
+
+    private static final String SESSION_KEY_PREFIX = "chatSession:";
+    private static final String LOCK_KEY_PREFIX = "chatSessionLock:";
+    private static final String COMPACT_LOCK_KEY_PREFIX = "chatSessionCompact:";
+
+    private static final String SYSTEM_PROMPT = """
+            You are a helpful assistant in a multi-turn conversation. Your reply must be in Chinese!
+            """;
+    private static final String SUMMARY_PROMPT = """
+            The SUMMARY section summarizes the earlier part of this conversation:
+            SUMMARY:
+                %s
+            """;
+    private static final String COMPACT_PROMPT = """
+            Merge the previous summary and the conversation below into a new summary of no more than %d Chinese characters.
+            Keep facts, decisions, names, numbers and open questions the user may refer to later. Output the summary only.
+            PREVIOUS SUMMARY:
+                %s
+            CONVERSATION:
+            %s
+            """;
+
+    /**
+     * 推理模型输出的思考过程，不计入历史
+     */
+    private static final Pattern THINK_PATTERN = Pattern.compile("(?s)<think>.*?</think>");
+
+    @Resource
+    private RedissonClient redissonClient;
+    @Resource
+    private TokenCounter tokenCounter;
+    @Resource
+    private ChatSessionProperties properties;
+
+    private Scheduler sessionScheduler;
+
+    @PostConstruct
+    public void init() {
+        sessionScheduler = Schedulers.newBoundedElastic(properties.getThreads(), properties.getQueueCapacity(),
+                "chat-session", 60, true);
+    }
+
+    @PreDestroy
+    public void stop() {
+        sessionScheduler.dispose();
+    }
+
+    /**
+     * 创建会话
+     *
+     * @return 会话ID
+     */
+    public String create() {
+        ChatSession session = new ChatSession();
+        session.setSessionId(UUID.randomUUID().toString());
+        session.setCreateTime(System.currentTimeMillis());
+        session.setUpdateTime(session.getCreateTime());
+        save(session);
+        return session.getSessionId();
+    }
+
+    /**
+     * 查询会话，不存在或已过期时返回null
+     */
+    public ChatSessionDTO query(String sessionId) {
+        ChatSession session = bucket(sessionId).get();
+        if (session == null) {
+            return null;
+        }
+        return ChatSessionDTO.builder()
+                .sessionId(session.getSessionId())
+                .summary(session.getSummary())
+                .summarizedTurns(session.getSummarizedTurns())
+                .turns(session.getTurns().size())
+                .historyTokens(session.historyTokens())
+                .createTime(session.getCreateTime())
+                .updateTime(session.getUpdateTime())
+                .build();
+    }
+
+    /**
+     * 删除会话
+     *
+     * @return 会话是否存在
+     */
+    public boolean delete(String sessionId) {
+        return bucket(sessionId).delete();
+    }
+
+    /**
+     * 基于会话历史的流式对话，回答完整结束后才写入历史，客户端中途断开的一轮不会保存
+     *
+     * @param sessionId  会话ID，由 {@link #create()} 返回
+     * @param message    用户问题
+     * @param chatStream 按组装好的消息调用模型流式生成，同时用于摘要压缩
+     * @return 流式回答
+     */
+    public Flux<ChatResponse> generateStream(String sessionId, String message,
+                                             Function<List<Message>, Flux<ChatResponse>> chatStream) {
+        if (StringUtils.isBlank(sessionId)) {
+            return Flux.error(new IllegalArgumentException("sessionId不能为空"));
+        }
+        return Mono.fromCallable(() -> {
+                    ChatSession session = bucket(sessionId).get();
+                    if (session == null) {
+                        throw new IllegalArgumentException("会话不存在或已过期 " + sessionId);
+                    }
+                    return buildMessages(session, message);
+                })
+                .subscribeOn(sessionScheduler)
+                .flatMapMany(messages -> {
+                    StringBuilder answer = new StringBuilder();
+                    return chatStream.apply(messages)
+                            .doOnNext(response -> {
+                                if (response.getResult() != null && response.getResult().getOutput() != null
+                                        && response.getResult().getOutput().getContent() != null) {
+                                    answer.append(response.getResult().getOutput().getContent());
+                                }
+                            })
+                            .doOnComplete(() -> Mono.fromRunnable(() -> append(sessionId, message, answer.toString(), chatStream))
+                                    .subscribeOn(sessionScheduler)
+                                    .subscribe(null, e -> log.error("会话历史保存失败 sessionId:{}", sessionId, e)));
+                });
+    }
+
+    private List<Message> buildMessages(ChatSession session, String message) {
+        List<Message> messages = new ArrayList<>();
+        // 摘要只在压缩时变化，与系统提示词合并为一条消息，保证两次压缩之间提示词前缀不变
+        String system = SYSTEM_PROMPT;
+        int budget = properties.getMaxHistoryTokens();
+        if (StringUtils.isNotBlank(session.getSummary())) {
+            system = system + SUMMARY_PROMPT.formatted(session.getSummary());
+            budget -= tokenCounter.count(session.getSummary());
+        }
+        messages.add(new SystemMessage(system));
+
+        // 压缩未及时完成时从最早的对话开始舍弃，保证提示词大小有上界
+        List<ChatTurn> turns = session.getTurns();
+        int from = turns.size();
+        while (from > 0 && budget - turns.get(from - 1).getTokens() >= 0) {
+            budget -= turns.get(from - 1).getTokens();
+            from--;
+        }
+        if (from > 0) {
+            log.warn("会话历史超出Token上限，舍弃最早的{}轮对话 sessionId:{}", from, session.getSessionId());
+        }
+        for (ChatTurn turn : turns.subList(from, turns.size())) {
+            messages.add(new UserMessage(turn.getQuestion()));
+            messages.add(new AssistantMessage(turn.getAnswer()));
+        }
+        messages.add(new UserMessage(message));
+        return messages;
+    }
+
+    private void append(String sessionId, String question, String answer, Function<List<Message>, Flux<ChatResponse>> chatStream) {
+        String content = THINK_PATTERN.matcher(answer).replaceAll("").strip();
+        if (content.isEmpty()) {
+            return;
+        }
+        ChatTurn turn = new ChatTurn(question, content, tokenCounter.count(question) + tokenCounter.count(content), System.currentTimeMillis());
+        ChatSession session = update(sessionId, current -> {
+            current.getTurns().add(turn);
+            current.setUpdateTime(turn.getCreateTime());
+        });
+        if (session != null && session.historyTokens() > properties.getCompactThresholdTokens()
+                && session.getTurns().size() > properties.getKeepRecentTurns()) {
+            compact(sessionId, chatStream);
+        }
+    }
+
+    /**
+     * 将最近几轮之前的对话与已有摘要合并为新摘要；同一会话同时只有一个压缩任务，
+     * 生成摘要期间新增的对话不受影响
+     */
+    private void compact(String sessionId, Function<List<Message>, Flux<ChatResponse>> chatStream) {
+        RLock compactLock = redissonClient.getLock(COMPACT_LOCK_KEY_PREFIX + sessionId);
+        if (!compactLock.tryLock()) {
+            return;
+        }
+        try {
+            ChatSession session = bucket(sessionId).get();
+            if (session == null) {
+                return;
+            }
+            int count = session.getTurns().size() - properties.getKeepRecentTurns();
+            if (count <= 0) {
+                return;
+            }
+            StringBuilder conversation = new StringBuilder();
+            for (ChatTurn turn : session.getTurns().subList(0, count)) {
+                conversation.append("USER: ").append(turn.getQuestion()).append('\n')
+                        .append("ASSISTANT: ").append(turn.getAnswer()).append('\n');
+            }
+            String prompt = COMPACT_PROMPT.formatted(properties.getSummaryMaxChars(),
+                    StringUtils.defaultIfBlank(session.getSummary(), "(none)"), conversation);
+
+            long start = System.currentTimeMillis();
+            String summary = chatStream.apply(List.of(new UserMessage(prompt)))
+                    .mapNotNull(response -> response.getResult() == null || response.getResult().getOutput() == null
+                            ? null : response.getResult().getOutput().getContent())
+                    .collect(StringBuilder::new, StringBuilder::append)
+                    .map(text -> THINK_PATTERN.matcher(text).replaceAll("").strip())
+                    .block(Duration.ofMinutes(2));
+            if (StringUtils.isBlank(summary)) {
+                log.warn("会话摘要为空，跳过本次压缩 sessionId:{}", sessionId);
+                return;
+            }
+
+            // 压缩只移除最早的对话，期间其他请求只会在末尾追加，按轮数截取即可
+            update(sessionId, current -> {
+                current.setSummary(summary);
+                current.setSummarizedTurns(current.getSummarizedTurns() + count);
+                current.setTurns(new ArrayList<>(current.getTurns().subList(Math.min(count, current.getTurns().size()), current.getTurns().size())));
+            });
+            log.info("会话历史压缩完成 sessionId:{} 压缩轮数:{} 摘要长度:{} 耗时:{}ms", sessionId, count, summary.length(),
+                    System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            log.error("会话历史压缩失败 sessionId:{}", sessionId, e);
+        } finally {
+            compactLock.unlock();
+        }
+    }
+
+    /**
+     * 在会话锁内读取、修改并写回会话，会话已删除时返回null
+     */
+    private ChatSession update(String sessionId, Consumer<ChatSession> modifier) {
+        RLock lock = redissonClient.getLock(LOCK_KEY_PREFIX + sessionId);
+        lock.lock();
+        try {
+            ChatSession session = bucket(sessionId).get();
+            if (session == null) {
+                return null;
+            }
+            modifier.accept(session);
+            save(session);
+            return session;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void save(ChatSession session) {
+        bucket(session.getSessionId()).set(session, Duration.ofHours(properties.getTtlHours()));
+    }
+
+    private RBucket<ChatSession> bucket(String sessionId) {
+        return redissonClient.getBucket(SESSION_KEY_PREFIX + sessionId);
+    }
+
+}
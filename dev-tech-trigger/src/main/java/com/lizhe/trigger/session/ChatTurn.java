@@ -0,0 +1,37 @@
+package com.lizhe.trigger.session;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+/**
+ * 一轮对话：用户问题及模型回答
+ *
+ * @author 李哲
+ * @since 1.0
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ChatTurn implements Serializable {
+
+    /**
+     * 用户问题
+     */
+    private String question;
+    /**
+     * 模型回答，已去除推理过程
+     */
+    private String answer;
+    /**
+     * 问题与回答的Token数
+     */
+    private int tokens;
+    /**
+     * 对话时间戳（单位：毫秒）
+     */
+    private long createTime;
+
+}
@@ -0,0 +1,122 @@
+package com.lizhe.trigger.ingest;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.ai.document.Document;
+
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * 验证跨文件向量化批处理的片段数、Token数、等待时间阈值，以及文件完成与失败只计一次
+ */
+@Slf4j
+public class EmbeddingBatcherTest {
+
+    private final IngestionJob job = new IngestionJob("job", "rag", List.of(), null);
+
+    @Test
+    public void test_cutAtMaxChunks() {
+        EmbeddingBatcher batcher = new EmbeddingBatcher(3, 10_000, 60_000);
+        FileProgress file = new FileProgress(job, "a.md");
+
+        List<EmbeddingBatcher.Batch> ready = batcher.add(file, chunks("a", 5), tokens(5, 1));
+        Assert.assertEquals(1, ready.size());
+        Assert.assertEquals(List.of("a0", "a1", "a2"), contents(ready.get(0)));
+
+        EmbeddingBatcher.Batch rest = batcher.flush();
+        Assert.assertEquals(List.of("a3", "a4"), contents(rest));
+        Assert.assertNull(batcher.flush());
+    }
+
+    @Test
+    public void test_cutAtMaxTokens() {
+        EmbeddingBatcher batcher = new EmbeddingBatcher(100, 10, 60_000);
+        FileProgress file = new FileProgress(job, "a.md");
+
+        // 第二个片段后累计12个Token，达到阈值10
+        List<EmbeddingBatcher.Batch> ready = batcher.add(file, chunks("a", 3), new int[]{6, 6, 1});
+        Assert.assertEquals(1, ready.size());
+        Assert.assertEquals(List.of("a0", "a1"), contents(ready.get(0)));
+        Assert.assertEquals(List.of("a2"), contents(batcher.flush()));
+    }
+
+    @Test
+    public void test_batchAcrossFiles() {
+        EmbeddingBatcher batcher = new EmbeddingBatcher(4, 10_000, 60_000);
+        FileProgress first = new FileProgress(job, "a.md");
+        FileProgress second = new FileProgress(job, "b.md");
+
+        Assert.assertTrue(batcher.add(first, chunks("a", 3), tokens(3, 1)).isEmpty());
+        List<EmbeddingBatcher.Batch> ready = batcher.add(second, chunks("b", 3), tokens(3, 1));
+
+        // 一个批次装入两个文件的片段，各自的归属分别记录
+        Assert.assertEquals(1, ready.size());
+        List<EmbeddingBatcher.Entry> entries = ready.get(0).entries();
+        Assert.assertEquals(2, entries.size());
+        Assert.assertSame(first, entries.get(0).file());
+        Assert.assertEquals(3, entries.get(0).chunks().size());
+        Assert.assertSame(second, entries.get(1).file());
+        Assert.assertEquals(1, entries.get(1).chunks().size());
+
+        EmbeddingBatcher.Batch rest = batcher.flush();
+        Assert.assertEquals(1, rest.entries().size());
+        Assert.assertSame(second, rest.entries().get(0).file());
+        Assert.assertEquals(List.of("b1", "b2"), contents(rest));
+    }
+
+    @Test
+    public void test_pollExpiredAfterMaxDelay() throws InterruptedException {
+        EmbeddingBatcher batcher = new EmbeddingBatcher(100, 10_000, 50);
+        Assert.assertNull(batcher.pollExpired());
+
+        batcher.add(new FileProgress(job, "a.md"), chunks("a", 2), tokens(2, 1));
+        Assert.assertNull(batcher.pollExpired());
+
+        Thread.sleep(100);
+        EmbeddingBatcher.Batch expired = batcher.pollExpired();
+        Assert.assertNotNull(expired);
+        Assert.assertEquals(List.of("a0", "a1"), contents(expired));
+        Assert.assertNull(batcher.pollExpired());
+    }
+
+    @Test
+    public void test_fileCompletesOnce() {
+        FileProgress file = new FileProgress(job, "a.md");
+        file.emitted(3);
+        Assert.assertFalse(file.stored(3));
+
+        // 封口前片段已全部入库，封口时完成
+        Assert.assertTrue(file.seal());
+        Assert.assertFalse(file.stored(0));
+        Assert.assertFalse(file.markFailed());
+        Assert.assertEquals(3, file.totalChunks());
+    }
+
+    @Test
+    public void test_fileFailsOnce() {
+        FileProgress file = new FileProgress(job, "a.md");
+        file.emitted(4);
+        file.seal();
+
+        Assert.assertTrue(file.markFailed());
+        Assert.assertFalse(file.markFailed());
+
+        // 失败后其余批次入库也不再计为完成
+        Assert.assertFalse(file.stored(4));
+    }
+
+    private static List<Document> chunks(String prefix, int count) {
+        return IntStream.range(0, count).mapToObj(i -> new Document(prefix + i)).toList();
+    }
+
+    private static int[] tokens(int count, int each) {
+        return IntStream.range(0, count).map(i -> each).toArray();
+    }
+
+    private static List<String> contents(EmbeddingBatcher.Batch batch) {
+        return batch.documents().stream().map(Document::getContent).toList();
+    }
+
+}
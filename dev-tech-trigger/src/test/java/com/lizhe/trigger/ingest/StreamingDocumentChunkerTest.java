@@ -0,0 +1,75 @@
+package com.lizhe.trigger.ingest;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 验证流式切分多字节文本：片段不超过800个Token、不含替换字符、不拆开代理对，且拼接后与原文一致
+ */
+@Slf4j
+public class StreamingDocumentChunkerTest {
+
+    /**
+     * 常用汉字、生僻字（多个Token）、emoji与扩展区汉字（代理对）混合
+     */
+    private static final String[] WORDS = {"知识库", "检索增强生成", "向量化", "片段", "龘靐齉爩", "🚀", "📚", "🧠✨", "😀", "𠮷野家", "流式解析", "Token"};
+
+    private final TokenCounter tokenCounter = new TokenCounter();
+    private StreamingDocumentChunker chunker;
+
+    @Before
+    public void setUp() {
+        chunker = new StreamingDocumentChunker();
+        ReflectionTestUtils.setField(chunker, "tokenCounter", tokenCounter);
+    }
+
+    @Test
+    public void test_multiByteText() throws Exception {
+        String input = sample();
+        List<String> chunks = new ArrayList<>();
+        chunker.chunk(new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8)), "sample.txt", chunks::add);
+
+        Assert.assertTrue(chunks.size() > 5);
+        for (String chunk : chunks) {
+            Assert.assertTrue(chunk, tokenCounter.count(chunk) <= 800);
+            Assert.assertEquals(chunk, -1, chunk.indexOf('\uFFFD'));
+            Assert.assertFalse(chunk, Character.isLowSurrogate(chunk.charAt(0)));
+            Assert.assertFalse(chunk, Character.isHighSurrogate(chunk.charAt(chunk.length() - 1)));
+        }
+        // 片段首尾空白被去除、换行被替换为空格，去掉全部空白后应与原文一致
+        Assert.assertEquals(input.replaceAll("\\s+", ""), String.join("", chunks).replaceAll("\\s+", ""));
+        log.info("测试结果 片段数:{} 原文字符数:{}", chunks.size(), input.length());
+    }
+
+    /**
+     * 前后为以换行结尾的短段落，中间是一整段没有换行和英文句末标点的长文本，只能在Token边界处硬切
+     */
+    private static String sample() {
+        StringBuilder text = new StringBuilder();
+        paragraphs(text, 0, 60);
+        for (int i = 0; i < 3000; i++) {
+            text.append(WORDS[i % WORDS.length]);
+        }
+        text.append('\n');
+        paragraphs(text, 60, 120);
+        return text.toString();
+    }
+
+    private static void paragraphs(StringBuilder text, int from, int to) {
+        for (int i = from; i < to; i++) {
+            for (int j = 0; j < 15; j++) {
+                text.append(WORDS[(i * 7 + j) % WORDS.length]);
+            }
+            text.append("。\n");
+        }
+    }
+
+}
@@ -0,0 +1,73 @@
+#!/usr/bin/env bash
+# 对比平台线程与虚拟线程模式下的接口延迟
+# 在后台持续上传文档触发导入任务的同时，并发请求阻塞式接口，统计各接口的延迟分位数和错误数。
+# 用法：分别以两种模式启动应用后各执行一次，LABEL 用于区分结果文件
+#   LABEL=platform ./virtual-thread-compare.sh
+#   LABEL=virtual  ./virtual-thread-compare.sh
+set -euo pipefail
+
+BASE_URL=${BASE_URL:-http://127.0.0.1:8090}
+LABEL=${LABEL:-run}
+MODEL=${MODEL:-deepseek-r1:1.5b}
+RAG_TAG=${RAG_TAG:-loadtest}
+# 上传到知识库的样例文档目录，为空时不施加导入负载
+UPLOAD_DIR=${UPLOAD_DIR:-}
+CONCURRENCY=${CONCURRENCY:-200}
+REQUESTS=${REQUESTS:-2000}
+# 同步生成请求占全部请求的比例（百分比），其余请求访问只读的标签列表接口
+GENERATE_PERCENT=${GENERATE_PERCENT:-5}
+
+OUT_DIR=${OUT_DIR:-./result-${LABEL}-$(date +%Y%m%d%H%M%S)}
+mkdir -p "${OUT_DIR}"
+
+request() {
+  local i=$1 path
+  if (( i % 100 < GENERATE_PERCENT )); then
+    # 每个请求的问题不同，避免被相同请求合并
+    path="/api/v1/ollama/generate?model=${MODEL}&message=1%2B${i}"
+    printf 'generate '
+  else
+    path="/api/v1/rag/query_rag_tag_list"
+    printf 'tags '
+  fi
+  curl -s -o /dev/null -m 300 -w '%{http_code} %{time_total}\n' "${BASE_URL}${path}" || true
+}
+export -f request
+export BASE_URL MODEL GENERATE_PERCENT
+
+INGEST_PID=
+if [[ -n "${UPLOAD_DIR}" ]]; then
+  (
+    while true; do
+      args=()
+      for file in "${UPLOAD_DIR}"/*; do
+        args+=(-F "file=@${file}")
+      done
+      curl -s -o /dev/null -X POST "${BASE_URL}/api/v1/rag/file/upload" -F "ragTag=${RAG_TAG}" "${args[@]}" || true
+      sleep 1
+    done
+  ) &
+  INGEST_PID=$!
+  trap '[[ -n "${INGEST_PID}" ]] && kill "${INGEST_PID}" 2>/dev/null || true' EXIT
+  # 等导入流水线进入稳定状态
+  sleep 10
+fi
+
+start=$(date +%s)
+seq 1 "${REQUESTS}" | xargs -P "${CONCURRENCY}" -I{} bash -c 'request {}' > "${OUT_DIR}/latency.txt"
+elapsed=$(( $(date +%s) - start ))
+
+{
+  echo "label=${LABEL} concurrency=${CONCURRENCY} requests=${REQUESTS} elapsed=${elapsed}s ingest=${UPLOAD_DIR:-none}"
+  for kind in tags generate; do
+    grep "^${kind} " "${OUT_DIR}/latency.txt" | awk -v kind="${kind}" '
+      { total++; if ($2 == "200") { ok++; print $3 | "sort -n > /tmp/lt_" kind } else if ($2 == "429") { rejected++ } else { errors++ } }
+      END { printf "%s total=%d ok=%d 429=%d errors=%d\n", kind, total, ok, rejected, errors }'
+    if [[ -s "/tmp/lt_${kind}" ]]; then
+      awk 'function q(p,  i) { i = int(NR * p) + 1; return v[i > NR ? NR : i] }
+        { v[NR] = $1 }
+        END { printf "  p50=%.3fs p95=%.3fs p99=%.3fs max=%.3fs\n", q(0.50), q(0.95), q(0.99), v[NR] }' "/tmp/lt_${kind}"
+      rm -f "/tmp/lt_${kind}"
+    fi
+  done
+} | tee "${OUT_DIR}/summary.txt"